@@ -0,0 +1,60 @@
+package com.fitness.activityservice.config;
+
+import com.fitness.activityservice.model.ActivityMetrics;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads stored metrics into {@link ActivityMetrics}. Documents written while metrics were a free-form map
+ * may use snake_case names for the known metrics and carry arbitrary other keys, so both spellings map
+ * onto the typed fields and every remaining key is kept in {@code extra}.
+ */
+@ReadingConverter
+public class ActivityMetricsReadConverter implements Converter<Document, ActivityMetrics> {
+
+    @Override
+    public ActivityMetrics convert(Document source) {
+        ActivityMetrics metrics = new ActivityMetrics();
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            Object value = entry.getValue();
+            switch (entry.getKey()) {
+                case "distance" -> metrics.setDistance(toDouble(value));
+                case "avgHeartRate", "avg_heart_rate" -> metrics.setAvgHeartRate(toInteger(value));
+                case "maxHeartRate", "max_heart_rate" -> metrics.setMaxHeartRate(toInteger(value));
+                case "avgPace", "avg_pace_seconds" -> metrics.setAvgPace(toDouble(value));
+                case "elevationGain", "elevation_gain" -> metrics.setElevationGain(toDouble(value));
+                case "heartRateSamples" -> metrics.setHeartRateSamples(toIntArray(value));
+                case "paceSamples" -> metrics.setPaceSamples(toDoubleArray(value));
+                case "elevationSamples" -> metrics.setElevationSamples(toDoubleArray(value));
+                case "extra" -> {
+                    if(value instanceof Map<?, ?> extra) extra.forEach((key, item) -> metrics.putExtra(key.toString(), item));
+                    else metrics.putExtra(entry.getKey(), value);
+                }
+                default -> metrics.putExtra(entry.getKey(), value);
+            }
+        }
+        return metrics;
+    }
+
+    private static Double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : null;
+    }
+
+    private static Integer toInteger(Object value) {
+        return value instanceof Number number ? number.intValue() : null;
+    }
+
+    private static int[] toIntArray(Object value) {
+        if(!(value instanceof Collection<?> items)) return null;
+        return items.stream().mapToInt(item -> item instanceof Number number ? number.intValue() : 0).toArray();
+    }
+
+    private static double[] toDoubleArray(Object value) {
+        if(!(value instanceof Collection<?> items)) return null;
+        return items.stream().mapToDouble(item -> item instanceof Number number ? number.doubleValue() : 0).toArray();
+    }
+}
@@ -0,0 +1,32 @@
+package com.fitness.activityservice.config;
+
+import com.fitness.activityservice.enums.ActivityStorageMode;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Selects where {@link com.fitness.activityservice.model.Activity} documents live. The entity resolves its
+ * collection name from this bean, so repositories and templates follow the configured mode.
+ */
+@Getter
+@Configuration
+public class ActivityStorageConfig {
+
+    @Value("${activity.storage.mode:STANDARD}")
+    private ActivityStorageMode mode;
+    @Value("${activity.storage.standard-collection:activities}")
+    private String standardCollection;
+    @Value("${activity.storage.time-series-collection:activities_ts}")
+    private String timeSeriesCollection;
+    @Value("${activity.storage.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    public boolean isTimeSeries(){
+        return mode == ActivityStorageMode.TIME_SERIES;
+    }
+
+    public String getCollectionName(){
+        return isTimeSeries() ? timeSeriesCollection : standardCollection;
+    }
+}
@@ -0,0 +1,53 @@
+package com.fitness.activityservice.config;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CacheConfig {
+
+    @Value("${activity.user-validation.cache.max-size:10000}")
+    private long maxSize;
+    @Value("${activity.user-validation.cache.positive-ttl:30m}")
+    private Duration positiveTtl;
+    @Value("${activity.user-validation.cache.negative-ttl:30s}")
+    private Duration negativeTtl;
+
+    @Bean
+    public AsyncCache<String, Boolean> userValidationCache(MeterRegistry meterRegistry){
+        AsyncCache<String, Boolean> cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ValidationExpiry(positiveTtl.toNanos(), negativeTtl.toNanos()))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "userValidation");
+        return cache;
+    }
+
+    // Valid users rarely become invalid, unknown users may register at any moment
+    private record ValidationExpiry(long positiveNanos, long negativeNanos) implements Expiry<String, Boolean> {
+
+        @Override
+        public long expireAfterCreate(String key, Boolean valid, long currentTime) {
+            return Boolean.TRUE.equals(valid) ? positiveNanos : negativeNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Boolean valid, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, valid, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Boolean valid, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
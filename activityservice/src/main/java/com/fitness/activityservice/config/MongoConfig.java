@@ -1,10 +1,103 @@
 package com.fitness.activityservice.config;
 
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import com.fitness.activityservice.model.ActivitySampleBlock;
+import com.fitness.activityservice.model.OutboxEvent;
+import com.fitness.activityservice.service.ActivityStorageService;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
 
 @Configuration
 @EnableMongoAuditing
+@EnableReactiveMongoAuditing
 public class MongoConfig {
 
+    // Activity and outbox writes share a transaction, which requires MongoDB to run as a replica set.
+    // Time-series collections cannot be written inside a transaction, see ActivityService.
+    @Bean
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory databaseFactory){
+        return new MongoTransactionManager(databaseFactory);
+    }
+
+    @Bean
+    public ReactiveMongoTransactionManager reactiveTransactionManager(ReactiveMongoDatabaseFactory databaseFactory){
+        return new ReactiveMongoTransactionManager(databaseFactory);
+    }
+
+    @Bean
+    public TransactionTemplate transactionTemplate(MongoTransactionManager transactionManager){
+        return new TransactionTemplate(transactionManager);
+    }
+
+    @Bean
+    public TransactionalOperator transactionalOperator(ReactiveMongoTransactionManager reactiveTransactionManager){
+        return TransactionalOperator.create(reactiveTransactionManager);
+    }
+
+    // Picked up by both the blocking and the reactive template
+    @Bean
+    public MongoCustomConversions mongoCustomConversions(){
+        return new MongoCustomConversions(List.of(new ActivityMetricsReadConverter()));
+    }
+
+    @Bean
+    public ApplicationRunner activityIndexInitializer(MongoTemplate mongoTemplate, ActivityStorageService activityStorageService,
+                                                      ActivityStorageConfig storageConfig){
+        return args -> {
+            activityStorageService.prepareCollection();
+
+            IndexOperations indexOps = mongoTemplate.indexOps(Activity.class);
+            // Keyset pagination of a user's history: equality on userId, then newest first
+            indexOps.ensureIndex(new Index()
+                    .on("userId", Sort.Direction.ASC)
+                    .on("startTime", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("user_start_id"));
+            // Same walk when the history is filtered by activity type
+            indexOps.ensureIndex(new Index()
+                    .on("userId", Sort.Direction.ASC)
+                    .on("type", Sort.Direction.ASC)
+                    .on("startTime", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("user_type_start_id"));
+            // Time-series collections have no _id index, which lookups of a single activity need
+            if(storageConfig.isTimeSeries()){
+                indexOps.ensureIndex(new Index().on("_id", Sort.Direction.ASC).named("id_lookup"));
+            }
+
+            mongoTemplate.indexOps(ActivityRollup.class).ensureIndex(new Index()
+                    .on("userId", Sort.Direction.ASC)
+                    .on("period", Sort.Direction.ASC)
+                    .on("bucketStart", Sort.Direction.ASC)
+                    .named("user_period_bucket"));
+
+            // Sweep of outbox entries left pending by an interrupted bulk or time-series write
+            mongoTemplate.indexOps(OutboxEvent.class).ensureIndex(new Index()
+                    .on("pending", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.ASC)
+                    .named("pending_created"));
+
+            mongoTemplate.indexOps(ActivitySampleBlock.class).ensureIndex(new Index()
+                    .on("activityId", Sort.Direction.ASC)
+                    .on("startTime", Sort.Direction.ASC)
+                    .named("activity_start"));
+        };
+    }
 }
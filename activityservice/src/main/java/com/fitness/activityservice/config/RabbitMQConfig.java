@@ -10,21 +10,35 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * Activities go out on two lanes of the same exchange: the fresh queue for live activities and the
+ * backfill queue for imports and old activities, so a backlog of history never delays new analyses.
+ * The retry and parking-lot queues behind the lanes are declared by the consumer (aiservice).
+ */
 @Configuration
 public class RabbitMQConfig {
 
     @Value("${rabbitmq.queue.name}")
     private String queueName;
+    @Value("${rabbitmq.queue.backfill-name:activity.backfill.queue}")
+    private String backfillQueueName;
     @Value("${rabbitmq.exchange.name}")
     private String exchange;
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
+    @Value("${rabbitmq.routing.backfill-key:activity.backfill}")
+    private String backfillRoutingKey;
 
     @Bean
     public Queue activityQueue(){
         return new Queue(queueName, true);
     }
 
+    @Bean
+    public Queue backfillQueue(){
+        return new Queue(backfillQueueName, true);
+    }
+
     @Bean
     public DirectExchange activityExchange(){
         return new DirectExchange(exchange);
@@ -35,6 +49,11 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(activityQueue).to(activityExchange).with(routingKey);
     }
 
+    @Bean
+    public Binding backfillBinding(Queue backfillQueue, DirectExchange activityExchange){
+        return BindingBuilder.bind(backfillQueue).to(activityExchange).with(backfillRoutingKey);
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter(){
         return new Jackson2JsonMessageConverter();
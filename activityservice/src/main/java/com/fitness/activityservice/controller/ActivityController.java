@@ -1,12 +1,25 @@
 package com.fitness.activityservice.controller;
 
+import com.fitness.activityservice.dto.ActivityBatchItemResponse;
+import com.fitness.activityservice.dto.ActivityPageResponse;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.ActivityStatsResponse;
+import com.fitness.activityservice.enums.ActivityType;
+import com.fitness.activityservice.enums.RollupPeriod;
+import com.fitness.activityservice.service.ActivityRollupService;
 import com.fitness.activityservice.service.ActivityService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -16,17 +29,57 @@ public class ActivityController {
     @Autowired
     private ActivityService activityService;
 
+    @Autowired
+    private ActivityRollupService rollupService;
+
     @PostMapping
     public ResponseEntity<ActivityResponse> tractActivity(@RequestBody ActivityRequest activityRequest, @RequestHeader("X-USER-ID") String userId){
         if(userId != null) activityRequest.setUserId(userId);
         return ResponseEntity.ok(activityService.trackActivity(activityRequest));
     }
 
+    @PostMapping("/reactive")
+    public Mono<ResponseEntity<ActivityResponse>> trackActivityReactive(@RequestBody ActivityRequest activityRequest, @RequestHeader("X-USER-ID") String userId){
+        activityRequest.setUserId(userId);
+        return activityService.trackActivityReactive(activityRequest).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<List<ActivityBatchItemResponse>> trackActivities(@RequestBody List<ActivityRequest> activityRequests, @RequestHeader("X-USER-ID") String userId){
+        return ResponseEntity.ok(activityService.trackActivities(userId, activityRequests));
+    }
+
     @GetMapping
     public ResponseEntity<List<ActivityResponse>> getUserActivities(@RequestHeader("X-USER-ID") String userId){
         return ResponseEntity.ok(activityService.getUserActivities(userId));
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<ActivityPageResponse> getUserActivitiesPage(@RequestHeader("X-USER-ID") String userId,
+                                                                      @RequestParam(required = false) String cursor,
+                                                                      @RequestParam(required = false) Integer limit,
+                                                                      @RequestParam(required = false) ActivityType type,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to){
+        return ResponseEntity.ok(activityService.getUserActivitiesPage(userId, cursor, limit, type, from, to));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<ActivityStatsResponse> getUserStats(@RequestHeader("X-USER-ID") String userId,
+                                                              @RequestParam(defaultValue = "WEEK") RollupPeriod period,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to){
+        return ResponseEntity.ok(rollupService.getStats(userId, period, from, to));
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUserActivities(@RequestHeader("X-USER-ID") String userId,
+                                                                      @RequestParam(defaultValue = "false") boolean gzip){
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson"));
+        if(gzip) response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return response.body(outputStream -> activityService.exportUserActivities(userId, outputStream, gzip));
+    }
+
     @GetMapping("/{activityId}")
     public ResponseEntity<ActivityResponse> getActivityByID(@PathVariable String activityId){
         return ResponseEntity.ok(activityService.getActivityByID(activityId));
@@ -0,0 +1,38 @@
+package com.fitness.activityservice.controller;
+
+import com.fitness.activityservice.dto.SampleSeries;
+import com.fitness.activityservice.dto.SampleSummaryResponse;
+import com.fitness.activityservice.service.ActivitySampleService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/activities/{activityId}/samples")
+public class ActivitySampleController {
+
+    private final ActivitySampleService sampleService;
+
+    @PostMapping
+    public ResponseEntity<SampleSummaryResponse> uploadChunk(@PathVariable String activityId,
+                                                             @RequestBody SampleSeries chunk,
+                                                             @RequestHeader("X-USER-ID") String userId){
+        return ResponseEntity.ok(sampleService.ingestChunk(userId, activityId, chunk));
+    }
+
+    @GetMapping
+    public ResponseEntity<SampleSeries> getSamples(@PathVariable String activityId,
+                                                   @RequestHeader("X-USER-ID") String userId,
+                                                   @RequestParam(required = false) Long from,
+                                                   @RequestParam(required = false) Long to,
+                                                   @RequestParam(required = false) Integer maxPoints){
+        return ResponseEntity.ok(sampleService.readRange(userId, activityId, from, to, maxPoints));
+    }
+
+    @GetMapping("/summary")
+    public ResponseEntity<SampleSummaryResponse> getSummary(@PathVariable String activityId,
+                                                            @RequestHeader("X-USER-ID") String userId){
+        return ResponseEntity.ok(sampleService.getSummary(userId, activityId));
+    }
+}
@@ -0,0 +1,13 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ActivityBatchItemResponse {
+    private int index;
+    private boolean success;
+    private ActivityResponse activity;
+    private String error;
+}
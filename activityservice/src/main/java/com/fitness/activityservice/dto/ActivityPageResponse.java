@@ -0,0 +1,13 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ActivityPageResponse {
+    private List<ActivityResponse> activities;
+    private String nextCursor;
+}
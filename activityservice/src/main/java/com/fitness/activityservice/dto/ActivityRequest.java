@@ -1,11 +1,11 @@
 package com.fitness.activityservice.dto;
 
 import com.fitness.activityservice.enums.ActivityType;
+import com.fitness.activityservice.model.ActivityMetrics;
 import lombok.Builder;
 import lombok.Data;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 import java.util.Objects;
 
 @Data
@@ -16,5 +16,5 @@ public class ActivityRequest {
     private Integer duration;
     private Integer caloriesBurned;
     private LocalDateTime startTime;
-    private Map<String, Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
 }
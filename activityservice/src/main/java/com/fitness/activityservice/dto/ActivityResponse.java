@@ -1,6 +1,7 @@
 package com.fitness.activityservice.dto;
 
 import com.fitness.activityservice.enums.ActivityType;
+import com.fitness.activityservice.model.ActivityMetrics;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.CreatedDate;
@@ -8,7 +9,6 @@ import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Data
 @Builder
@@ -19,7 +19,7 @@ public class ActivityResponse {
     private Integer duration;
     private Integer caloriesBurned;
     private LocalDateTime startTime;
-    private Map<String, Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
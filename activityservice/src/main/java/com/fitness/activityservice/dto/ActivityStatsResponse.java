@@ -0,0 +1,16 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.enums.RollupPeriod;
+import com.fitness.activityservice.model.ActivityRollup;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ActivityStatsResponse {
+    private RollupPeriod period;
+    private List<ActivityRollup> rollups;
+    private int currentStreakDays;
+}
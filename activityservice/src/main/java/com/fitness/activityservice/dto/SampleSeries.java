@@ -0,0 +1,27 @@
+package com.fitness.activityservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Columnar sensor samples: every non-null column has one entry per timestamp (epoch millis).
+ * Used both for chunk uploads and for range reads.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SampleSeries {
+    private long[] timestamps;
+    private int[] heartRates;
+    private double[] latitudes;
+    private double[] longitudes;
+    // Metres
+    private double[] elevations;
+    // Cumulative metres since the start of the activity
+    private double[] distances;
+}
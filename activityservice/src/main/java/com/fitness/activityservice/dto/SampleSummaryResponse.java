@@ -0,0 +1,20 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class SampleSummaryResponse {
+    private String activityId;
+    private long sampleCount;
+    private Long firstTimestamp;
+    private Long lastTimestamp;
+    private Integer avgHeartRate;
+    private Integer maxHeartRate;
+    private double totalDistance;
+    // Seconds taken for each completed kilometre
+    private List<Long> splitSeconds;
+}
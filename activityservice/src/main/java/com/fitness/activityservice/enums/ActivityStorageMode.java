@@ -0,0 +1,6 @@
+package com.fitness.activityservice.enums;
+
+public enum ActivityStorageMode {
+    STANDARD,
+    TIME_SERIES
+}
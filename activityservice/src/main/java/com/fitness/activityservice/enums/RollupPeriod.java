@@ -0,0 +1,7 @@
+package com.fitness.activityservice.enums;
+
+public enum RollupPeriod {
+    DAY,
+    WEEK,
+    MONTH
+}
@@ -0,0 +1,31 @@
+package com.fitness.activityservice.model;
+
+import com.fitness.activityservice.enums.RollupPeriod;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@Document(collection = "activity_rollups")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRollup {
+    @Id
+    private String id;
+    private String userId;
+    private RollupPeriod period;
+    private LocalDate bucketStart;
+    private long activityCount;
+    private long totalDuration;
+    private long totalCalories;
+    private Map<String, Long> countByType;
+    private Map<String, Long> durationByType;
+    private Map<String, Long> caloriesByType;
+}
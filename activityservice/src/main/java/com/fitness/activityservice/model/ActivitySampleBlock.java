@@ -0,0 +1,33 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * One uploaded chunk of samples. Each column is scaled to integers, delta encoded, zig-zag varint
+ * packed and deflated; absent columns are left null.
+ */
+@Document(collection = "activity_samples")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivitySampleBlock {
+    @Id
+    private String id;
+    private String activityId;
+    private long startTime;
+    private long endTime;
+    private int count;
+
+    private byte[] timestamps;
+    private byte[] heartRates;
+    private byte[] latitudes;
+    private byte[] longitudes;
+    private byte[] elevations;
+    private byte[] distances;
+}
@@ -0,0 +1,41 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Running aggregates over an activity's sample stream, advanced chunk by chunk during ingestion.
+ */
+@Document(collection = "activity_sample_summary")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivitySampleSummary {
+    @Id
+    private String activityId;
+    private long sampleCount;
+    private Long firstTimestamp;
+    private Long lastTimestamp;
+
+    private long heartRateCount;
+    private long heartRateSum;
+    private Integer maxHeartRate;
+
+    private double totalDistance;
+    private double nextSplitDistance;
+    private Long splitStartTimestamp;
+    @Builder.Default
+    private List<Long> splitSeconds = new ArrayList<>();
+
+    @Version
+    private Long version;
+}
@@ -0,0 +1,32 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "activity_outbox")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    private String id;
+    private String activityId;
+    private Activity payload;
+    // Published to the backfill lane instead of the fresh one
+    private boolean backfill;
+    // Written ahead of a non-transactional activity insert; the relay skips it until it is confirmed
+    private boolean pending;
+    // Failed publishes of this entry on its own; it is parked once these reach the limit
+    private int attempts;
+
+    @CreatedDate
+    private LocalDateTime createdAt;
+}
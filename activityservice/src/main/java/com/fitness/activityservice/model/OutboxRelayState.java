@@ -0,0 +1,23 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "activity_outbox_state")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxRelayState {
+    @Id
+    private String id;
+    private String lastPublishedId;
+    private LocalDateTime lastPublishedAt;
+    private long publishedCount;
+}
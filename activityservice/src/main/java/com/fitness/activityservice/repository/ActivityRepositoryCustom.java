@@ -0,0 +1,32 @@
+package com.fitness.activityservice.repository;
+
+import com.fitness.activityservice.enums.ActivityType;
+import com.fitness.activityservice.model.Activity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public interface ActivityRepositoryCustom {
+
+    /**
+     * Inserts all activities with a single unordered bulk write.
+     * Returns the failed positions mapped to their error message; every other activity was written.
+     */
+    Map<Integer, String> insertAllUnordered(List<Activity> activities);
+
+    /**
+     * Returns up to {@code limit} activities of a user, newest first, strictly after the
+     * {@code (afterStartTime, afterId)} keyset position when one is given. Activities without a start time
+     * come last; a position with only {@code afterId} lies among them.
+     */
+    List<Activity> findPage(String userId, ActivityType type, LocalDateTime from, LocalDateTime to,
+                            LocalDateTime afterStartTime, String afterId, int limit);
+
+    /**
+     * Streams every activity of a user, newest first, from a server-side cursor.
+     * The returned stream must be closed to release the cursor.
+     */
+    Stream<Activity> streamByUserId(String userId);
+}
@@ -0,0 +1,95 @@
+package com.fitness.activityservice.repository;
+
+import com.fitness.activityservice.enums.ActivityType;
+import com.fitness.activityservice.model.Activity;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class ActivityRepositoryCustomImpl implements ActivityRepositoryCustom {
+
+    private static final int EXPORT_CURSOR_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Map<Integer, String> insertAllUnordered(List<Activity> activities) {
+        if(activities.isEmpty()) return Collections.emptyMap();
+
+        // Ids are assigned up front so callers can reference the saved activities after the bulk write.
+        // A pre-set id makes auditing treat the entity as existing, so the audit dates are set here as well.
+        LocalDateTime now = LocalDateTime.now();
+        activities.forEach(activity -> {
+            if(activity.getId() == null) activity.setId(new ObjectId().toHexString());
+            if(activity.getCreatedAt() == null) activity.setCreatedAt(now);
+            if(activity.getUpdatedAt() == null) activity.setUpdatedAt(now);
+        });
+
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)
+                    .insert(activities)
+                    .execute();
+            return Collections.emptyMap();
+        }catch (BulkOperationException e){
+            Map<Integer, String> failures = new HashMap<>();
+            for (BulkWriteError error : e.getErrors()) {
+                failures.put(error.getIndex(), error.getMessage());
+            }
+            return failures;
+        }
+    }
+
+    @Override
+    public List<Activity> findPage(String userId, ActivityType type, LocalDateTime from, LocalDateTime to,
+                                   LocalDateTime afterStartTime, String afterId, int limit) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if(type != null) criteria.and("type").is(type);
+        if(from != null || to != null){
+            Criteria range = criteria.and("startTime");
+            if(from != null) range.gte(from);
+            if(to != null) range.lt(to);
+        }
+
+        Query query = new Query(criteria);
+        if(afterId != null && afterStartTime != null){
+            // Legacy activities without a startTime sort after all others in descending order
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("startTime").lt(afterStartTime),
+                    Criteria.where("startTime").is(afterStartTime).and("_id").lt(new ObjectId(afterId)),
+                    Criteria.where("startTime").is(null)
+            ));
+        }else if(afterId != null){
+            // The previous page ended among activities without a startTime, which are ordered by id alone
+            query.addCriteria(new Criteria().andOperator(
+                    Criteria.where("startTime").is(null),
+                    Criteria.where("_id").lt(new ObjectId(afterId))
+            ));
+        }
+
+        // Matches the (userId, startTime, _id) index so the sort and the keyset bound are served from it
+        query.with(Sort.by(Sort.Direction.DESC, "startTime", "_id")).limit(limit);
+        return mongoTemplate.find(query, Activity.class);
+    }
+
+    @Override
+    public Stream<Activity> streamByUserId(String userId) {
+        Query query = new Query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Direction.DESC, "startTime", "_id"))
+                .cursorBatchSize(EXPORT_CURSOR_BATCH_SIZE);
+        return mongoTemplate.stream(query, Activity.class);
+    }
+}
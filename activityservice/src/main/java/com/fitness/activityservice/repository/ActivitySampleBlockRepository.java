@@ -0,0 +1,13 @@
+package com.fitness.activityservice.repository;
+
+import com.fitness.activityservice.model.ActivitySampleBlock;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ActivitySampleBlockRepository extends MongoRepository<ActivitySampleBlock, String> {
+    public List<ActivitySampleBlock> findByActivityIdAndEndTimeGreaterThanEqualAndStartTimeLessThanEqualOrderByStartTimeAsc(
+            String activityId, long from, long to);
+}
@@ -0,0 +1,9 @@
+package com.fitness.activityservice.repository;
+
+import com.fitness.activityservice.model.ActivitySampleSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ActivitySampleSummaryRepository extends MongoRepository<ActivitySampleSummary, String> {
+}
@@ -0,0 +1,15 @@
+package com.fitness.activityservice.repository;
+
+import com.fitness.activityservice.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends MongoRepository<OutboxEvent, String> {
+    @Query(value = "{ 'pending': { $ne: true } }", sort = "{ '_id': 1 }")
+    public List<OutboxEvent> findReady(Pageable pageable);
+}
@@ -0,0 +1,141 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityStatsResponse;
+import com.fitness.activityservice.enums.ActivityType;
+import com.fitness.activityservice.enums.RollupPeriod;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps per-user daily, weekly and monthly totals up to date with {@code $inc} upserts as activities
+ * are tracked, so stats reads touch a handful of small documents instead of the whole history.
+ */
+@Service
+@RequiredArgsConstructor
+public class ActivityRollupService {
+
+    @Value("${activity.stats.default-buckets:12}")
+    private int defaultBuckets;
+    @Value("${activity.stats.streak-window-days:365}")
+    private int streakWindowDays;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public void apply(Activity activity){
+        applyAll(List.of(activity));
+    }
+
+    public void applyAll(List<Activity> activities){
+        if(activities.isEmpty()) return;
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class)
+                .upsert(rollupUpdates(activities))
+                .execute();
+    }
+
+    public Mono<Void> applyReactive(Activity activity){
+        ReactiveBulkOperations bulkOps = reactiveMongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+        rollupUpdates(List.of(activity)).forEach(update -> bulkOps.upsert(update.getFirst(), update.getSecond()));
+        return bulkOps.execute().then();
+    }
+
+    public ActivityStatsResponse getStats(String userId, RollupPeriod period, LocalDate from, LocalDate to){
+        LocalDate end = bucketStart(period, to == null ? LocalDate.now() : to);
+        LocalDate start = from == null ? minusBuckets(period, end, defaultBuckets - 1) : bucketStart(period, from);
+
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("period").is(period)
+                .and("bucketStart").gte(start).lte(end))
+                .with(Sort.by(Sort.Direction.ASC, "bucketStart"));
+
+        return ActivityStatsResponse.builder()
+                .period(period)
+                .rollups(mongoTemplate.find(query, ActivityRollup.class))
+                .currentStreakDays(currentStreak(userId))
+                .build();
+    }
+
+    // Consecutive active days ending today, or yesterday when nothing has been logged yet today
+    private int currentStreak(String userId){
+        LocalDate today = LocalDate.now();
+        Query query = new Query(Criteria.where("userId").is(userId)
+                .and("period").is(RollupPeriod.DAY)
+                .and("bucketStart").gte(today.minusDays(streakWindowDays)).lte(today))
+                .with(Sort.by(Sort.Direction.DESC, "bucketStart"));
+        query.fields().include("bucketStart");
+
+        int streak = 0;
+        LocalDate expected = today;
+        for (ActivityRollup day : mongoTemplate.find(query, ActivityRollup.class)) {
+            if(streak == 0 && day.getBucketStart().equals(today.minusDays(1))) expected = day.getBucketStart();
+            if(!day.getBucketStart().equals(expected)) break;
+            streak++;
+            expected = expected.minusDays(1);
+        }
+        return streak;
+    }
+
+    private List<Pair<Query, Update>> rollupUpdates(List<Activity> activities){
+        List<Pair<Query, Update>> updates = new ArrayList<>(activities.size() * RollupPeriod.values().length);
+        for (Activity activity : activities) {
+            LocalDateTime time = activity.getStartTime() != null ? activity.getStartTime()
+                    : activity.getCreatedAt() != null ? activity.getCreatedAt() : LocalDateTime.now();
+            String type = (activity.getType() != null ? activity.getType() : ActivityType.OTHER).name();
+            long duration = activity.getDuration() != null ? activity.getDuration() : 0;
+            long calories = activity.getCaloriesBurned() != null ? activity.getCaloriesBurned() : 0;
+
+            for (RollupPeriod period : RollupPeriod.values()) {
+                LocalDate bucketStart = bucketStart(period, time.toLocalDate());
+                String id = activity.getUserId() + ":" + period + ":" + bucketStart;
+                Update update = new Update()
+                        .setOnInsert("userId", activity.getUserId())
+                        .setOnInsert("period", period)
+                        .setOnInsert("bucketStart", bucketStart)
+                        .inc("activityCount", 1)
+                        .inc("totalDuration", duration)
+                        .inc("totalCalories", calories)
+                        .inc("countByType." + type, 1)
+                        .inc("durationByType." + type, duration)
+                        .inc("caloriesByType." + type, calories);
+                updates.add(Pair.of(new Query(Criteria.where("_id").is(id)), update));
+            }
+        }
+        return updates;
+    }
+
+    private LocalDate bucketStart(RollupPeriod period, LocalDate date){
+        return switch (period) {
+            case DAY -> date;
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+    }
+
+    private LocalDate minusBuckets(RollupPeriod period, LocalDate bucketStart, int buckets){
+        return switch (period) {
+            case DAY -> bucketStart.minusDays(buckets);
+            case WEEK -> bucketStart.minusWeeks(buckets);
+            case MONTH -> bucketStart.minusMonths(buckets);
+        };
+    }
+}
@@ -0,0 +1,259 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.SampleSeries;
+import com.fitness.activityservice.dto.SampleSummaryResponse;
+import com.fitness.activityservice.model.ActivitySampleBlock;
+import com.fitness.activityservice.model.ActivitySampleSummary;
+import com.fitness.activityservice.repository.ActivityRepository;
+import com.fitness.activityservice.repository.ActivitySampleBlockRepository;
+import com.fitness.activityservice.repository.ActivitySampleSummaryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static com.fitness.activityservice.service.SampleColumnCodec.*;
+
+/**
+ * Ingests high-frequency sensor samples for an existing activity as compressed columnar blocks and
+ * keeps a running summary (heart rate, distance, per-km splits) so no request ever loads the whole stream.
+ */
+@Service
+@RequiredArgsConstructor
+public class ActivitySampleService {
+
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final double METRE_SCALE = 10;
+    private static final double SPLIT_DISTANCE = 1000;
+
+    @Value("${activity.samples.max-chunk-size:3600}")
+    private int maxChunkSize;
+    @Value("${activity.samples.max-points:2000}")
+    private int defaultMaxPoints;
+
+    private final ActivityRepository activityRepository;
+    private final ActivitySampleBlockRepository blockRepository;
+    private final ActivitySampleSummaryRepository summaryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public SampleSummaryResponse ingestChunk(String userId, String activityId, SampleSeries chunk){
+        requireOwnedActivity(userId, activityId);
+        long[] timestamps = validateChunk(chunk);
+        int count = timestamps.length;
+
+        ActivitySampleSummary summary = summaryRepository.findById(activityId)
+                .orElseGet(() -> ActivitySampleSummary.builder().activityId(activityId).nextSplitDistance(SPLIT_DISTANCE).build());
+        if(summary.getLastTimestamp() != null && timestamps[0] <= summary.getLastTimestamp()){
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Sample chunk overlaps already ingested samples for activity: " + activityId);
+        }
+        advanceSummary(summary, chunk);
+
+        ActivitySampleBlock block = ActivitySampleBlock.builder()
+                .activityId(activityId)
+                .startTime(timestamps[0])
+                .endTime(timestamps[count - 1])
+                .count(count)
+                .timestamps(encode(timestamps))
+                .heartRates(encode(widen(chunk.getHeartRates())))
+                .latitudes(encode(scale(chunk.getLatitudes(), COORDINATE_SCALE)))
+                .longitudes(encode(scale(chunk.getLongitudes(), COORDINATE_SCALE)))
+                .elevations(encode(scale(chunk.getElevations(), METRE_SCALE)))
+                .distances(encode(scale(chunk.getDistances(), METRE_SCALE)))
+                .build();
+
+        ActivitySampleSummary savedSummary;
+        try {
+            savedSummary = transactionTemplate.execute(status -> {
+                blockRepository.insert(block);
+                return summaryRepository.save(summary);
+            });
+        }catch (OptimisticLockingFailureException | DuplicateKeyException e){
+            // Another chunk of this activity was stored since the summary was read; the client re-sends this one
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Concurrent sample upload for activity: " + activityId + ", retry the chunk");
+        }
+        return mapToSummaryResponse(savedSummary);
+    }
+
+    public SampleSeries readRange(String userId, String activityId, Long from, Long to, Integer maxPoints){
+        requireOwnedActivity(userId, activityId);
+        long lower = from == null ? Long.MIN_VALUE : from;
+        long upper = to == null ? Long.MAX_VALUE : to;
+        List<ActivitySampleBlock> blocks = blockRepository
+                .findByActivityIdAndEndTimeGreaterThanEqualAndStartTimeLessThanEqualOrderByStartTimeAsc(activityId, lower, upper);
+
+        // Blocks only overlap the range, so the stride is based on the samples actually inside it
+        List<ActivitySampleBlock> selected = new ArrayList<>();
+        List<long[]> selectedTimestamps = new ArrayList<>();
+        int total = 0;
+        for (ActivitySampleBlock block : blocks) {
+            long[] timestamps = decode(block.getTimestamps(), block.getCount());
+            int inRange = 0;
+            for (long timestamp : timestamps) {
+                if(timestamp >= lower && timestamp <= upper) inRange++;
+            }
+            if(inRange == 0) continue;
+            selected.add(block);
+            selectedTimestamps.add(timestamps);
+            total += inRange;
+        }
+        int limit = maxPoints == null ? defaultMaxPoints : Math.max(1, maxPoints);
+        // Keep every stride-th sample so the response never exceeds the requested number of points
+        int stride = Math.max(1, (total + limit - 1) / limit);
+
+        SeriesBuilder series = new SeriesBuilder(Math.min(total, limit), selected);
+        long index = 0;
+        for (int b = 0; b < selected.size(); b++) {
+            ActivitySampleBlock block = selected.get(b);
+            long[] timestamps = selectedTimestamps.get(b);
+            int[] heartRates = narrow(decode(block.getHeartRates(), block.getCount()));
+            double[] latitudes = unscale(decode(block.getLatitudes(), block.getCount()), COORDINATE_SCALE);
+            double[] longitudes = unscale(decode(block.getLongitudes(), block.getCount()), COORDINATE_SCALE);
+            double[] elevations = unscale(decode(block.getElevations(), block.getCount()), METRE_SCALE);
+            double[] distances = unscale(decode(block.getDistances(), block.getCount()), METRE_SCALE);
+            for (int i = 0; i < block.getCount(); i++) {
+                if(timestamps[i] < lower || timestamps[i] > upper) continue;
+                if(index++ % stride != 0) continue;
+                series.add(timestamps[i], heartRates, latitudes, longitudes, elevations, distances, i);
+            }
+        }
+        return series.build();
+    }
+
+    public SampleSummaryResponse getSummary(String userId, String activityId){
+        requireOwnedActivity(userId, activityId);
+        return summaryRepository.findById(activityId)
+                .map(this::mapToSummaryResponse)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No samples found for activity: " + activityId));
+    }
+
+    private void requireOwnedActivity(String userId, String activityId){
+        // Someone else's activity answers exactly like a missing one so ids cannot be probed
+        activityRepository.findById(activityId)
+                .filter(found -> Objects.equals(found.getUserId(), userId))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Activity Id Not found: " + activityId));
+    }
+
+    private long[] validateChunk(SampleSeries chunk){
+        long[] timestamps = chunk.getTimestamps();
+        if(timestamps == null || timestamps.length == 0){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sample chunk has no timestamps");
+        }
+        if(timestamps.length > maxChunkSize){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Sample chunk exceeds limit of " + maxChunkSize + ": " + timestamps.length);
+        }
+        for (int i = 1; i < timestamps.length; i++) {
+            if(timestamps[i] <= timestamps[i - 1]){
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sample timestamps must be strictly increasing");
+            }
+        }
+        int n = timestamps.length;
+        if((chunk.getHeartRates() != null && chunk.getHeartRates().length != n)
+                || (chunk.getLatitudes() != null && chunk.getLatitudes().length != n)
+                || (chunk.getLongitudes() != null && chunk.getLongitudes().length != n)
+                || (chunk.getElevations() != null && chunk.getElevations().length != n)
+                || (chunk.getDistances() != null && chunk.getDistances().length != n)){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every sample column must have one value per timestamp");
+        }
+        return timestamps;
+    }
+
+    private void advanceSummary(ActivitySampleSummary summary, SampleSeries chunk){
+        long[] timestamps = chunk.getTimestamps();
+        int[] heartRates = chunk.getHeartRates();
+        double[] distances = chunk.getDistances();
+
+        if(summary.getFirstTimestamp() == null){
+            summary.setFirstTimestamp(timestamps[0]);
+            summary.setSplitStartTimestamp(timestamps[0]);
+        }
+        for (int i = 0; i < timestamps.length; i++) {
+            if(heartRates != null && heartRates[i] > 0){
+                summary.setHeartRateCount(summary.getHeartRateCount() + 1);
+                summary.setHeartRateSum(summary.getHeartRateSum() + heartRates[i]);
+                if(summary.getMaxHeartRate() == null || heartRates[i] > summary.getMaxHeartRate()){
+                    summary.setMaxHeartRate(heartRates[i]);
+                }
+            }
+            if(distances != null){
+                summary.setTotalDistance(Math.max(summary.getTotalDistance(), distances[i]));
+                while (summary.getTotalDistance() >= summary.getNextSplitDistance()) {
+                    summary.getSplitSeconds().add((timestamps[i] - summary.getSplitStartTimestamp()) / 1000);
+                    summary.setSplitStartTimestamp(timestamps[i]);
+                    summary.setNextSplitDistance(summary.getNextSplitDistance() + SPLIT_DISTANCE);
+                }
+            }
+        }
+        summary.setSampleCount(summary.getSampleCount() + timestamps.length);
+        summary.setLastTimestamp(timestamps[timestamps.length - 1]);
+    }
+
+    private SampleSummaryResponse mapToSummaryResponse(ActivitySampleSummary summary){
+        return SampleSummaryResponse.builder()
+                .activityId(summary.getActivityId())
+                .sampleCount(summary.getSampleCount())
+                .firstTimestamp(summary.getFirstTimestamp())
+                .lastTimestamp(summary.getLastTimestamp())
+                .avgHeartRate(summary.getHeartRateCount() == 0 ? null
+                        : (int) Math.round((double) summary.getHeartRateSum() / summary.getHeartRateCount()))
+                .maxHeartRate(summary.getMaxHeartRate())
+                .totalDistance(summary.getTotalDistance())
+                .splitSeconds(summary.getSplitSeconds())
+                .build();
+    }
+
+    // Collects the selected samples into columns. A column is only returned when every selected block carries
+    // it, since a block without it has no values to fill in and zeros would read as real measurements
+    private static final class SeriesBuilder {
+        private final long[] timestamps;
+        private final int[] heartRates;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final double[] elevations;
+        private final double[] distances;
+        private int size;
+
+        SeriesBuilder(int capacity, List<ActivitySampleBlock> blocks) {
+            timestamps = new long[capacity];
+            boolean any = !blocks.isEmpty();
+            heartRates = any && blocks.stream().allMatch(b -> b.getHeartRates() != null) ? new int[capacity] : null;
+            latitudes = any && blocks.stream().allMatch(b -> b.getLatitudes() != null) ? new double[capacity] : null;
+            longitudes = any && blocks.stream().allMatch(b -> b.getLongitudes() != null) ? new double[capacity] : null;
+            elevations = any && blocks.stream().allMatch(b -> b.getElevations() != null) ? new double[capacity] : null;
+            distances = any && blocks.stream().allMatch(b -> b.getDistances() != null) ? new double[capacity] : null;
+        }
+
+        void add(long timestamp, int[] hr, double[] lat, double[] lon, double[] ele, double[] dist, int i) {
+            if(size == timestamps.length) return;
+            timestamps[size] = timestamp;
+            if(heartRates != null) heartRates[size] = hr[i];
+            if(latitudes != null) latitudes[size] = lat[i];
+            if(longitudes != null) longitudes[size] = lon[i];
+            if(elevations != null) elevations[size] = ele[i];
+            if(distances != null) distances[size] = dist[i];
+            size++;
+        }
+
+        SampleSeries build() {
+            return SampleSeries.builder()
+                    .timestamps(Arrays.copyOf(timestamps, size))
+                    .heartRates(heartRates == null ? null : Arrays.copyOf(heartRates, size))
+                    .latitudes(latitudes == null ? null : Arrays.copyOf(latitudes, size))
+                    .longitudes(longitudes == null ? null : Arrays.copyOf(longitudes, size))
+                    .elevations(elevations == null ? null : Arrays.copyOf(elevations, size))
+                    .distances(distances == null ? null : Arrays.copyOf(distances, size))
+                    .build();
+        }
+    }
+}
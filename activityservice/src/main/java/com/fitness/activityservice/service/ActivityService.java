@@ -1,33 +1,70 @@
 package com.fitness.activityservice.service;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fitness.activityservice.config.ActivityStorageConfig;
+import com.fitness.activityservice.dto.ActivityBatchItemResponse;
+import com.fitness.activityservice.dto.ActivityPageResponse;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.enums.ActivityType;
 import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
 import com.fitness.activityservice.repository.ActivityRepository;
+import com.fitness.activityservice.repository.OutboxEventRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ActivityService {
 
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
+    @Value("${activity.batch.max-size:500}")
+    private int batchMaxSize;
+    @Value("${activity.page.default-size:20}")
+    private int pageDefaultSize;
+    @Value("${activity.page.max-size:100}")
+    private int pageMaxSize;
+    // Activities that started longer ago than this are analyzed on the backfill lane
+    @Value("${activity.outbox.backfill-age:24h}")
+    private Duration backfillAge;
 
     private final ActivityRepository repository;
     private final UserValidationService userValidationService;
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxEventRepository outboxRepository;
+    private final ActivityRollupService rollupService;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    private final ActivityStorageConfig storageConfig;
+    private final PendingOutboxService pendingOutbox;
 
     public ActivityResponse trackActivity(ActivityRequest request){
 
@@ -36,25 +73,146 @@ public class ActivityService {
             throw new RuntimeException("Invalid User: " + request.getUserId());
         }
 
-        Activity activity = Activity.builder()
+        Activity activity = mapToActivity(request);
+
+        // Activity and its outbox entry commit together; OutboxRelay publishes to RabbitMQ.
+        // Time-series collections cannot take part in a transaction, so there the outbox entry is written
+        // as pending first and confirmed with the rollups once the activity is saved.
+        Activity savedActivity;
+        if(storageConfig.isTimeSeries()){
+            assignIdentity(activity);
+            List<OutboxEvent> event = List.of(mapToOutboxEvent(activity));
+            pendingOutbox.writePending(event);
+            savedActivity = repository.insert(activity);
+            pendingOutbox.confirm(event);
+        }else{
+            savedActivity = transactionTemplate.execute(status -> {
+                Activity saved = repository.save(activity);
+                recordActivityWritten(saved);
+                return saved;
+            });
+        }
+
+        return mapToResponse(savedActivity);
+    }
+
+    /**
+     * Non-blocking variant of {@link #trackActivity(ActivityRequest)}: validation and the transactional
+     * activity and outbox inserts run on the reactive stack.
+     */
+    public Mono<ActivityResponse> trackActivityReactive(ActivityRequest request){
+        return userValidationService.validateUserReactive(request.getUserId())
+                .flatMap(isValid -> {
+                    if(!isValid){
+                        return Mono.error(new RuntimeException("Invalid User: " + request.getUserId()));
+                    }
+                    if(storageConfig.isTimeSeries()){
+                        Activity activity = mapToActivity(request);
+                        assignIdentity(activity);
+                        OutboxEvent event = mapToOutboxEvent(activity);
+                        return pendingOutbox.writePendingReactive(event)
+                                .then(reactiveMongoTemplate.insert(activity))
+                                .flatMap(saved -> pendingOutbox.confirmReactive(event).thenReturn(saved));
+                    }
+                    return transactionalOperator.transactional(reactiveMongoTemplate.insert(mapToActivity(request))
+                            .flatMap(saved -> recordActivityWrittenReactive(saved).thenReturn(saved)));
+                })
+                .map(this::mapToResponse);
+    }
+
+    public List<ActivityBatchItemResponse> trackActivities(String userId, List<ActivityRequest> requests){
+        if(requests.size() > batchMaxSize){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch size exceeds limit of " + batchMaxSize + ": " + requests.size());
+        }
+
+        boolean isValid = userValidationService.validateUser(userId);
+        if(!isValid){
+            throw new RuntimeException("Invalid User: " + userId);
+        }
+
+        List<Activity> activities = new ArrayList<>(requests.size());
+        List<OutboxEvent> events = new ArrayList<>(requests.size());
+        for (ActivityRequest request : requests) {
+            Activity activity = mapToActivity(request);
+            activity.setUserId(userId);
+            assignIdentity(activity);
+            activities.add(activity);
+            events.add(mapToOutboxEvent(activity));
+        }
+
+        // A write error would abort a transaction and fail the whole batch, so the unordered bulk insert runs
+        // on its own between writing the outbox entries as pending and confirming those of the saved activities
+        pendingOutbox.writePending(events);
+        Map<Integer, String> failures = repository.insertAllUnordered(activities);
+
+        List<ActivityBatchItemResponse> responses = new ArrayList<>(activities.size());
+        List<OutboxEvent> savedEvents = new ArrayList<>(activities.size());
+        List<OutboxEvent> failedEvents = new ArrayList<>(failures.size());
+        for (int i = 0; i < activities.size(); i++) {
+            String error = failures.get(i);
+            if(error == null){
+                savedEvents.add(events.get(i));
+                responses.add(ActivityBatchItemResponse.builder()
+                        .index(i)
+                        .success(true)
+                        .activity(mapToResponse(activities.get(i)))
+                        .build());
+            }else{
+                failedEvents.add(events.get(i));
+                responses.add(ActivityBatchItemResponse.builder()
+                        .index(i)
+                        .success(false)
+                        .error(error)
+                        .build());
+            }
+        }
+
+        pendingOutbox.discard(failedEvents);
+        pendingOutbox.confirm(savedEvents);
+        return responses;
+    }
+
+    // Activities written outside an outbox transaction get their id up front for the pending outbox entry;
+    // with a preset id auditing treats them as existing, so the audit dates are set here too
+    private void assignIdentity(Activity activity){
+        LocalDateTime now = LocalDateTime.now();
+        activity.setId(new ObjectId().toHexString());
+        activity.setCreatedAt(now);
+        activity.setUpdatedAt(now);
+    }
+
+    private void recordActivityWritten(Activity activity){
+        outboxRepository.save(mapToOutboxEvent(activity));
+        rollupService.apply(activity);
+    }
+
+    private Mono<Void> recordActivityWrittenReactive(Activity activity){
+        return reactiveMongoTemplate.insert(mapToOutboxEvent(activity))
+                .then(rollupService.applyReactive(activity));
+    }
+
+    private OutboxEvent mapToOutboxEvent(Activity activity){
+        LocalDateTime backfillCutoff = LocalDateTime.now().minus(backfillAge);
+        return mapToOutboxEvent(activity, activity.getStartTime() != null && activity.getStartTime().isBefore(backfillCutoff));
+    }
+
+    private OutboxEvent mapToOutboxEvent(Activity activity, boolean backfill){
+        return OutboxEvent.builder()
+                .activityId(activity.getId())
+                .payload(activity)
+                .backfill(backfill)
+                .build();
+    }
+
+    private Activity mapToActivity(ActivityRequest request){
+        return Activity.builder()
                 .userId(request.getUserId())
                 .type(request.getType())
                 .duration(request.getDuration())
                 .caloriesBurned(request.getCaloriesBurned())
-                .startTime(request.getStartTime())
+                .startTime(request.getStartTime() != null ? request.getStartTime() : LocalDateTime.now())
                 .additionalMetrics(request.getAdditionalMetrics())
                 .build();
-
-        Activity savedActivity = repository.save(activity);
-
-        // Publishing activity to RabbitMQ
-        try {
-            rabbitTemplate.convertAndSend(exchange, routingKey, savedActivity);
-        }catch (Exception e){
-            log.error("Failed to send activity to RabbitMQ: " + e);
-        }
-
-        return mapToResponse(savedActivity);
     }
 
     private ActivityResponse mapToResponse(Activity activity){
@@ -78,6 +236,60 @@ public class ActivityService {
                 .collect(Collectors.toList());
     }
 
+    public ActivityPageResponse getUserActivitiesPage(String userId, String cursor, Integer limit,
+                                                      ActivityType type, LocalDateTime from, LocalDateTime to) {
+        int pageSize = limit == null ? pageDefaultSize : Math.max(1, Math.min(limit, pageMaxSize));
+
+        LocalDateTime afterStartTime = null;
+        String afterId = null;
+        if(cursor != null && !cursor.isBlank()){
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                afterStartTime = parts[0].isEmpty() ? null : LocalDateTime.parse(parts[0]);
+                afterId = parts[1];
+            }catch (Exception e){
+                afterId = null;
+            }
+            if(afterId == null || !ObjectId.isValid(afterId)){
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+        }
+
+        // One extra row tells us whether another page exists without a count query
+        List<Activity> activities = repository.findPage(userId, type, from, to, afterStartTime, afterId, pageSize + 1);
+        String nextCursor = null;
+        if(activities.size() > pageSize){
+            activities = activities.subList(0, pageSize);
+            Activity last = activities.get(pageSize - 1);
+            // Legacy rows without a startTime get an id-only position
+            String position = (last.getStartTime() != null ? last.getStartTime().toString() : "") + "|" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return ActivityPageResponse.builder()
+                .activities(activities.stream().map(this::mapToResponse).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * Writes the user's whole history as newline-delimited JSON, one activity at a time, straight
+     * from the Mongo cursor. Blocking writes to the response stream throttle the cursor to the client's pace.
+     */
+    public void exportUserActivities(String userId, OutputStream outputStream, boolean gzip) throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+        ObjectWriter writer = objectMapper.writerFor(ActivityResponse.class);
+        try (Stream<Activity> activities = repository.streamByUserId(userId)) {
+            Iterator<Activity> iterator = activities.iterator();
+            while (iterator.hasNext()) {
+                out.write(writer.writeValueAsBytes(mapToResponse(iterator.next())));
+                out.write('\n');
+            }
+        }
+        if(out instanceof GZIPOutputStream gzipOut) gzipOut.finish();
+        out.flush();
+    }
+
     public ActivityResponse getActivityByID(String activityId) {
          return repository.findById(activityId)
                  .map(this::mapToResponse)
@@ -0,0 +1,140 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.config.ActivityStorageConfig;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Creates the time-series activity collection ({@code userId} as metaField, {@code startTime} as timeField)
+ * and optionally copies the standard collection into it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ActivityStorageService {
+
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final ActivityStorageConfig storageConfig;
+    private final MongoTemplate mongoTemplate;
+
+    public void prepareCollection(){
+        if(!storageConfig.isTimeSeries()) return;
+
+        String collection = storageConfig.getTimeSeriesCollection();
+        if(!mongoTemplate.collectionExists(collection)){
+            mongoTemplate.createCollection(collection, CollectionOptions.empty()
+                    .timeSeries(CollectionOptions.TimeSeriesOptions.timeSeries("startTime")
+                            .metaField("userId")
+                            .granularity(Granularity.HOURS)));
+            log.info("Created time-series collection {}", collection);
+        }
+
+        if(storageConfig.isMigrateOnStartup()) migrateFromStandard();
+    }
+
+    /**
+     * Copies the standard collection into the time-series collection in batches, in {@code _id} order. An
+     * interrupted run resumes after the highest {@code _id} already in the target, first filling in what the
+     * unordered insert of the interrupted batch left out. Fails if the target holds documents the migration
+     * did not copy, since the resume point cannot be trusted then.
+     */
+    public void migrateFromStandard(){
+        MongoCollection<Document> source = mongoTemplate.getCollection(storageConfig.getStandardCollection());
+        MongoCollection<Document> target = mongoTemplate.getCollection(storageConfig.getTimeSeriesCollection());
+
+        Bson remaining = new Document();
+        long migrated = 0;
+        long skipped = 0;
+        Document last = target.find().projection(Projections.include("_id")).sort(Sorts.descending("_id")).first();
+        if(last != null){
+            Object resumeAfter = last.get("_id");
+            if(source.find(Filters.eq("_id", resumeAfter)).first() == null){
+                throw new IllegalStateException("Cannot migrate activities: " + storageConfig.getTimeSeriesCollection()
+                        + " contains " + resumeAfter + ", which is not in " + storageConfig.getStandardCollection()
+                        + "; disable migrate-on-startup or empty the target");
+            }
+            migrated = fillInterruptedBatch(source, target, resumeAfter);
+            remaining = Filters.gt("_id", resumeAfter);
+            log.info("Resuming activity migration after {}", resumeAfter);
+        }
+
+        List<Document> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+        try (MongoCursor<Document> cursor = source.find(remaining).sort(Sorts.ascending("_id"))
+                .batchSize(MIGRATION_BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Document activity = cursor.next();
+                if(!withStartTime(activity)){
+                    skipped++;
+                    continue;
+                }
+                batch.add(activity);
+                if(batch.size() == MIGRATION_BATCH_SIZE){
+                    migrated += insert(target, batch);
+                    batch.clear();
+                }
+            }
+        }
+        migrated += insert(target, batch);
+        log.info("Migrated {} activities from {} to {}", migrated, storageConfig.getStandardCollection(), storageConfig.getTimeSeriesCollection());
+        if(skipped > 0){
+            log.warn("Skipped {} activities without a start time; they remain only in {}", skipped, storageConfig.getStandardCollection());
+        }
+    }
+
+    // Batches are inserted one after another, so only the last one before the resume point can have gaps
+    private long fillInterruptedBatch(MongoCollection<Document> source, MongoCollection<Document> target, Object resumeAfter){
+        List<Document> tail = source.find(Filters.lte("_id", resumeAfter))
+                .sort(Sorts.descending("_id"))
+                .limit(MIGRATION_BATCH_SIZE)
+                .into(new ArrayList<>());
+        Set<Object> present = new HashSet<>();
+        target.find(Filters.in("_id", tail.stream().map(activity -> activity.get("_id")).toList()))
+                .projection(Projections.include("_id"))
+                .forEach(activity -> present.add(activity.get("_id")));
+        List<Document> missing = tail.stream()
+                .filter(activity -> !present.contains(activity.get("_id")))
+                .filter(this::withStartTime)
+                .toList();
+        return insert(target, missing);
+    }
+
+    // The timeField is mandatory in a time-series collection
+    private boolean withStartTime(Document activity){
+        if(activity.get("startTime") == null) activity.put("startTime", activity.get("createdAt"));
+        if(activity.get("startTime") != null) return true;
+        log.warn("Not migrating activity {}: it has neither startTime nor createdAt", activity.get("_id"));
+        return false;
+    }
+
+    private long insert(MongoCollection<Document> target, List<Document> batch){
+        if(batch.isEmpty()) return 0;
+        try {
+            target.insertMany(batch, new InsertManyOptions().ordered(false));
+            return batch.size();
+        }catch (MongoBulkWriteException e){
+            // Documents copied by an earlier run are fine to skip; anything else stops the migration
+            if(e.getWriteErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) throw e;
+            return e.getWriteResult().getInsertedCount();
+        }
+    }
+}
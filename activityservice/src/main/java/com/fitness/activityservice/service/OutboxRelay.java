@@ -0,0 +1,159 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.OutboxEvent;
+import com.fitness.activityservice.model.OutboxRelayState;
+import com.fitness.activityservice.repository.OutboxEventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Drains the activity outbox to RabbitMQ. Each batch is published on one channel and only removed
+ * from the outbox once the broker has confirmed every message in it, so delivery is at-least-once.
+ * When a batch keeps failing its entries are published one by one, and an entry that keeps failing on
+ * its own is parked. Run a single relay per deployment; several relays would publish the same entries.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxRelay {
+
+    private static final String RELAY_STATE_ID = "activity";
+    // Entries that failed to publish on their own too often, kept for inspection and manual replay
+    private static final String PARKED_COLLECTION = "activity_outbox_parked";
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+    @Value("${rabbitmq.routing.backfill-key:activity.backfill}")
+    private String backfillRoutingKey;
+    @Value("${activity.outbox.batch-size:100}")
+    private int batchSize;
+    @Value("${activity.outbox.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${activity.outbox.max-event-attempts:10}")
+    private int maxEventAttempts;
+    @Value("${activity.outbox.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+    @Value("${activity.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    private final OutboxEventRepository outboxRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final MongoTemplate mongoTemplate;
+
+    @Scheduled(fixedDelayString = "${activity.outbox.poll-interval-ms:500}")
+    public void relay(){
+        List<OutboxEvent> batch;
+        do {
+            batch = outboxRepository.findReady(PageRequest.of(0, batchSize));
+            if(batch.isEmpty()) return;
+            if(!publishWithRetry(batch)){
+                // One entry that can never be published must not hold back everything behind it
+                publishIndividually(batch);
+                return;
+            }
+            markPublished(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    private boolean publishWithRetry(List<OutboxEvent> batch){
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                publish(batch);
+                return true;
+            }catch (Exception e){
+                log.warn("Outbox batch publish failed (attempt {}/{}): {}", attempt, maxAttempts, e.getMessage());
+                if(attempt < maxAttempts && !backOff(attempt)) return false;
+            }
+        }
+        log.error("Giving up on outbox batch starting at {} until the next poll", batch.get(0).getId());
+        return false;
+    }
+
+    private void publishIndividually(List<OutboxEvent> batch){
+        List<OutboxEvent> published = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            try {
+                publish(List.of(event));
+                published.add(event);
+            }catch (AmqpConnectException | AmqpTimeoutException e){
+                // The broker is unreachable or slow, which says nothing about the entries themselves
+                break;
+            }catch (Exception e){
+                recordFailure(event, e);
+            }
+        }
+        if(!published.isEmpty()) markPublished(published);
+    }
+
+    private void publish(List<OutboxEvent> events){
+        rabbitTemplate.invoke(operations -> {
+            events.forEach(event -> operations.convertAndSend(exchange,
+                    event.isBackfill() ? backfillRoutingKey : routingKey,
+                    event.getPayload(),
+                    message -> {
+                        // Lets consumers measure how long the message waited in the queue
+                        message.getMessageProperties().setTimestamp(new Date());
+                        return message;
+                    }));
+            operations.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+    }
+
+    private void recordFailure(OutboxEvent event, Exception e){
+        int attempts = event.getAttempts() + 1;
+        if(attempts < maxEventAttempts){
+            log.warn("Outbox entry {} failed to publish on its own (attempt {}/{}): {}", event.getId(), attempts, maxEventAttempts, e.getMessage());
+            mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(event.getId())), new Update().inc("attempts", 1), OutboxEvent.class);
+            return;
+        }
+        log.error("Parking outbox entry {} for activity {} in {} after {} failed publishes: {}",
+                event.getId(), event.getActivityId(), PARKED_COLLECTION, attempts, e.getMessage());
+        event.setAttempts(attempts);
+        mongoTemplate.insert(event, PARKED_COLLECTION);
+        outboxRepository.deleteById(event.getId());
+    }
+
+    private void markPublished(List<OutboxEvent> events){
+        outboxRepository.deleteAllById(events.stream().map(OutboxEvent::getId).toList());
+        advanceHighWaterMark(events.get(events.size() - 1), events.size());
+    }
+
+    private boolean backOff(int attempt){
+        try {
+            Thread.sleep(retryBackoffMs * (1L << (attempt - 1)));
+            return true;
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void advanceHighWaterMark(OutboxEvent last, int published){
+        mongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(RELAY_STATE_ID)),
+                new Update()
+                        .set("lastPublishedId", last.getId())
+                        .set("lastPublishedAt", LocalDateTime.now())
+                        .inc("publishedCount", published),
+                OutboxRelayState.class);
+    }
+}
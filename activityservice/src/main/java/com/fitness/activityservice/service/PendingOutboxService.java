@@ -0,0 +1,131 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Outbox entries for activity writes that cannot share a transaction with the outbox: unordered bulk
+ * inserts and inserts into the time-series collection. The entry is written first as pending, which the
+ * relay skips, and is confirmed together with the activity's rollups once the activity is saved. Entries
+ * left pending by a crash in between are swept up: confirmed if their activity exists, dropped if not.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PendingOutboxService {
+
+    private static final Update RELEASE = new Update().set("pending", false);
+
+    @Value("${activity.outbox.pending-timeout:1m}")
+    private Duration pendingTimeout;
+    @Value("${activity.outbox.batch-size:100}")
+    private int batchSize;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionalOperator transactionalOperator;
+    private final ActivityRollupService rollupService;
+
+    public void writePending(List<OutboxEvent> events){
+        if(events.isEmpty()) return;
+        events.forEach(event -> event.setPending(true));
+        mongoTemplate.insertAll(events);
+    }
+
+    public Mono<OutboxEvent> writePendingReactive(OutboxEvent event){
+        event.setPending(true);
+        return reactiveMongoTemplate.insert(event);
+    }
+
+    /**
+     * Releases the entries of saved activities to the relay and applies their rollups in one transaction.
+     * Only entries still pending are released and counted, so an entry the sweep got to first is not counted
+     * twice; a sweep releasing the same entries concurrently makes one of the transactions fail on a write conflict.
+     */
+    public void confirm(List<OutboxEvent> events){
+        if(events.isEmpty()) return;
+        transactionTemplate.executeWithoutResult(status -> {
+            Query pending = new Query(Criteria.where("_id").in(events.stream().map(OutboxEvent::getId).toList())
+                    .and("pending").is(true));
+            pending.fields().include("_id");
+            Set<String> pendingIds = mongoTemplate.find(pending, OutboxEvent.class).stream()
+                    .map(OutboxEvent::getId)
+                    .collect(Collectors.toSet());
+            if(pendingIds.isEmpty()) return;
+
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(pendingIds).and("pending").is(true)),
+                    RELEASE, OutboxEvent.class);
+            rollupService.applyAll(events.stream()
+                    .filter(event -> pendingIds.contains(event.getId()))
+                    .map(OutboxEvent::getPayload)
+                    .toList());
+        });
+    }
+
+    public Mono<Void> confirmReactive(OutboxEvent event){
+        return transactionalOperator.transactional(
+                reactiveMongoTemplate.updateFirst(pendingEntry(event.getId()), RELEASE, OutboxEvent.class)
+                        .flatMap(result -> result.getModifiedCount() > 0
+                                ? rollupService.applyReactive(event.getPayload())
+                                : Mono.empty()));
+    }
+
+    // Entries of activities that were not saved
+    public void discard(List<OutboxEvent> events){
+        if(events.isEmpty()) return;
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(events.stream().map(OutboxEvent::getId).toList())
+                .and("pending").is(true)), OutboxEvent.class);
+    }
+
+    @Scheduled(fixedDelayString = "${activity.outbox.pending-sweep-interval-ms:60000}")
+    public void recoverStale(){
+        List<OutboxEvent> stale;
+        do {
+            LocalDateTime cutoff = LocalDateTime.now().minus(pendingTimeout);
+            stale = mongoTemplate.find(new Query(Criteria.where("pending").is(true).and("createdAt").lt(cutoff))
+                    .limit(batchSize), OutboxEvent.class);
+            if(stale.isEmpty()) return;
+
+            Query saved = new Query(Criteria.where("_id").in(stale.stream().map(OutboxEvent::getActivityId).toList()));
+            saved.fields().include("_id");
+            Set<String> savedIds = mongoTemplate.find(saved, Activity.class).stream()
+                    .map(Activity::getId)
+                    .collect(Collectors.toSet());
+
+            List<OutboxEvent> recovered = new ArrayList<>();
+            List<OutboxEvent> orphaned = new ArrayList<>();
+            for (OutboxEvent event : stale) {
+                (savedIds.contains(event.getActivityId()) ? recovered : orphaned).add(event);
+            }
+            confirm(recovered);
+            discard(orphaned);
+            log.warn("Recovered {} pending outbox entries and dropped {} whose activity was never saved",
+                    recovered.size(), orphaned.size());
+        } while (stale.size() == batchSize);
+    }
+
+    private Query pendingEntry(String id){
+        return new Query(Criteria.where("_id").is(id).and("pending").is(true));
+    }
+}
@@ -0,0 +1,92 @@
+package com.fitness.activityservice.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Delta + zig-zag varint encoding of integer columns, deflated. Slowly changing 1 Hz series
+ * (time, heart rate, position) mostly turn into one-byte deltas before compression.
+ */
+final class SampleColumnCodec {
+
+    private SampleColumnCodec() {
+    }
+
+    static byte[] encode(long[] values) {
+        if(values == null) return null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(values.length * 2);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            long previous = 0;
+            for (long value : values) {
+                long delta = value - previous;
+                previous = value;
+                long zigZag = (delta << 1) ^ (delta >> 63);
+                while ((zigZag & ~0x7FL) != 0) {
+                    out.write((int) ((zigZag & 0x7F) | 0x80));
+                    zigZag >>>= 7;
+                }
+                out.write((int) zigZag);
+            }
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static long[] decode(byte[] data, int count) {
+        if(data == null) return null;
+        long[] values = new long[count];
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                long zigZag = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = in.read();
+                    if(b < 0) throw new IOException("Truncated sample column");
+                    zigZag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                previous += (zigZag >>> 1) ^ -(zigZag & 1);
+                values[i] = previous;
+            }
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return values;
+    }
+
+    static long[] scale(double[] values, double factor) {
+        if(values == null) return null;
+        long[] scaled = new long[values.length];
+        for (int i = 0; i < values.length; i++) scaled[i] = Math.round(values[i] * factor);
+        return scaled;
+    }
+
+    static double[] unscale(long[] values, double factor) {
+        if(values == null) return null;
+        double[] unscaled = new double[values.length];
+        for (int i = 0; i < values.length; i++) unscaled[i] = values[i] / factor;
+        return unscaled;
+    }
+
+    static long[] widen(int[] values) {
+        if(values == null) return null;
+        long[] widened = new long[values.length];
+        for (int i = 0; i < values.length; i++) widened[i] = values[i];
+        return widened;
+    }
+
+    static int[] narrow(long[] values) {
+        if(values == null) return null;
+        int[] narrowed = new int[values.length];
+        for (int i = 0; i < values.length; i++) narrowed[i] = (int) values[i];
+        return narrowed;
+    }
+}
@@ -1,30 +1,49 @@
 package com.fitness.activityservice.service;
 
-import lombok.AllArgsConstructor;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletionException;
 
 @Service
 @RequiredArgsConstructor
 public class UserValidationService {
     private final WebClient userServiceWebClient;
+    private final AsyncCache<String, Boolean> userValidationCache;
 
     public Boolean validateUser(String userId){
         try {
-            return userServiceWebClient.get()
-                    .uri("/api/users/{userId}/validate", userId)
-                    .retrieve()
-                    .bodyToMono(Boolean.class)
-                    .block();
-        }catch (WebClientResponseException ex){
-            if(ex.getStatusCode() == HttpStatus.NOT_FOUND){
-                throw new RuntimeException("User not found: " + userId);
-            }
+            // Concurrent lookups for the same user share the in-flight call; failed calls are not cached
+            return userValidationCache.get(userId, (key, executor) -> fetchValidation(key).toFuture()).join();
+        }catch (CompletionException ex){
+            // An unknown user is invalid; an unreachable or failing user service is an error, not a verdict
+            if(isNotFound(ex.getCause())) return false;
+            if(ex.getCause() instanceof RuntimeException cause) throw cause;
+            throw ex;
         }
-        return false;
+    }
+
+    public Mono<Boolean> validateUserReactive(String userId){
+        return Mono.fromFuture(() -> userValidationCache.get(userId, (key, executor) -> fetchValidation(key).toFuture()))
+                .onErrorResume(UserValidationService::isNotFound, ex -> Mono.just(false));
+    }
+
+    private static boolean isNotFound(Throwable error){
+        return error instanceof WebClientResponseException responseException
+                && responseException.getStatusCode() == HttpStatus.NOT_FOUND;
+    }
+
+    private Mono<Boolean> fetchValidation(String userId){
+        return userServiceWebClient.get()
+                .uri("/api/users/{userId}/validate", userId)
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .defaultIfEmpty(false);
     }
 
 }
@@ -0,0 +1,123 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.SampleSeries;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivitySampleBlock;
+import com.fitness.activityservice.model.ActivitySampleSummary;
+import com.fitness.activityservice.repository.ActivityRepository;
+import com.fitness.activityservice.repository.ActivitySampleBlockRepository;
+import com.fitness.activityservice.repository.ActivitySampleSummaryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ActivitySampleServiceTest {
+
+    private static final String USER = "user-1";
+    private static final String ACTIVITY = "activity-1";
+
+    private final ActivityRepository activityRepository = mock(ActivityRepository.class);
+    private final ActivitySampleBlockRepository blockRepository = mock(ActivitySampleBlockRepository.class);
+    private final ActivitySampleSummaryRepository summaryRepository = mock(ActivitySampleSummaryRepository.class);
+    private final ActivitySampleService service = new ActivitySampleService(activityRepository, blockRepository,
+            summaryRepository, mock(TransactionTemplate.class));
+
+    @BeforeEach
+    void ownActivity() {
+        Activity activity = new Activity();
+        activity.setId(ACTIVITY);
+        activity.setUserId(USER);
+        when(activityRepository.findById(ACTIVITY)).thenReturn(Optional.of(activity));
+    }
+
+    @Test
+    void decimatesOnlyOverSamplesInsideTheRange() {
+        // Two blocks of 1000 samples, one per second; the range covers 20 samples across the boundary
+        long[] first = LongStream.range(0, 1000).map(i -> i * 1000).toArray();
+        long[] second = LongStream.range(1000, 2000).map(i -> i * 1000).toArray();
+        givenBlocks(block(first), block(second));
+
+        SampleSeries series = service.readRange(USER, ACTIVITY, 990_000L, 1_009_000L, 10);
+
+        assertArrayEquals(LongStream.range(0, 10).map(i -> 990_000 + i * 2000).toArray(), series.getTimestamps());
+        assertEquals(10, series.getHeartRates().length);
+        assertEquals(990 % 200, series.getHeartRates()[0]);
+    }
+
+    @Test
+    void omitsColumnsMissingFromABlock() {
+        long[] first = {1000, 2000};
+        long[] second = {3000, 4000};
+        ActivitySampleBlock withoutHeartRate = block(second);
+        withoutHeartRate.setHeartRates(null);
+        givenBlocks(block(first), withoutHeartRate);
+
+        SampleSeries series = service.readRange(USER, ACTIVITY, null, null, 100);
+
+        assertArrayEquals(new long[]{1000, 2000, 3000, 4000}, series.getTimestamps());
+        assertNull(series.getHeartRates());
+    }
+
+    @Test
+    void someoneElsesActivityLooksMissing() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> service.getSummary("user-2", ACTIVITY));
+
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        assertFalse(e.getReason().contains(USER));
+    }
+
+    @Test
+    void nonIncreasingTimestampsAreABadRequest() {
+        SampleSeries chunk = SampleSeries.builder().timestamps(new long[]{2000, 1000}).build();
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> service.ingestChunk(USER, ACTIVITY, chunk));
+
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+
+    @Test
+    void overlappingChunkIsAConflict() {
+        when(summaryRepository.findById(ACTIVITY))
+                .thenReturn(Optional.of(ActivitySampleSummary.builder().activityId(ACTIVITY).lastTimestamp(2000L).build()));
+        SampleSeries chunk = SampleSeries.builder().timestamps(new long[]{2000, 3000}).build();
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> service.ingestChunk(USER, ACTIVITY, chunk));
+
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+    }
+
+    private void givenBlocks(ActivitySampleBlock... blocks) {
+        when(blockRepository.findByActivityIdAndEndTimeGreaterThanEqualAndStartTimeLessThanEqualOrderByStartTimeAsc(
+                eq(ACTIVITY), anyLong(), anyLong())).thenReturn(List.of(blocks));
+    }
+
+    private static ActivitySampleBlock block(long[] timestamps) {
+        return ActivitySampleBlock.builder()
+                .activityId(ACTIVITY)
+                .startTime(timestamps[0])
+                .endTime(timestamps[timestamps.length - 1])
+                .count(timestamps.length)
+                .timestamps(SampleColumnCodec.encode(timestamps))
+                .heartRates(SampleColumnCodec.encode(LongStream.of(timestamps).map(t -> t / 1000 % 200).toArray()))
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package com.fitness.activityservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SampleColumnCodecTest {
+
+    @Test
+    void roundTripsDeltasOfEverySizeAndSign() {
+        long[] values = {1_700_000_000_000L, 1_700_000_001_000L, 1_700_000_001_000L, 0, -1, 63, -64, 64,
+                Long.MAX_VALUE / 2, Long.MIN_VALUE / 2, 42};
+
+        assertArrayEquals(values, SampleColumnCodec.decode(SampleColumnCodec.encode(values), values.length));
+    }
+
+    @Test
+    void roundTripsScaledColumns() {
+        double[] latitudes = {52.5200066, 52.5200123, -33.8688197};
+
+        double[] decoded = SampleColumnCodec.unscale(
+                SampleColumnCodec.decode(SampleColumnCodec.encode(SampleColumnCodec.scale(latitudes, 1e7)), latitudes.length), 1e7);
+
+        assertArrayEquals(latitudes, decoded, 1e-7);
+    }
+
+    @Test
+    void keepsAbsentColumnsAbsent() {
+        assertNull(SampleColumnCodec.encode(null));
+        assertNull(SampleColumnCodec.decode(null, 3));
+    }
+}
@@ -0,0 +1,227 @@
+package com.fitness.aiservice.harness;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityMetrics;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.repository.RecommendationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.qpid.server.SystemLauncher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives generated activities through the real listener, AI service and repository with every external
+ * system replaced locally: Qpid Broker-J speaks AMQP 0-9-1 in-process, mongod is embedded, and Gemini is
+ * the llm-stub endpoint served by the application itself. Reports throughput, end-to-end latency
+ * percentiles and queue lag; set harness.min-throughput to turn a capacity regression into a failure.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@ActiveProfiles({"harness", "llm-stub"})
+class PipelineThroughputHarness {
+
+    private static final String[] TYPES = {"RUNNING", "CYCLING", "SWIMMING", "WALKING", "YOGA", "WEIGHT_TRAINING"};
+
+    private static final int AMQP_PORT = freePort();
+    private static final int HTTP_PORT = freePort();
+    private static SystemLauncher broker;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+    @Autowired
+    private RecommendationRepository recommendationRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${harness.activities}")
+    private int activityCount;
+    @Value("${harness.timeout}")
+    private Duration timeout;
+    @Value("${harness.min-throughput}")
+    private double minThroughput;
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+    @Value("${rabbitmq.queue.name}")
+    private String queueName;
+    @Value("${ai.retry.parking-lot:activity.parking-lot}")
+    private String parkingLotQueue;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        Path workDir = Files.createTempDirectory("qpid-harness");
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("type", "Memory");
+        attributes.put("initialConfigurationLocation",
+                PipelineThroughputHarness.class.getResource("/qpid-harness-config.json").toExternalForm());
+        attributes.put("startupLoggedToSystemOut", false);
+        attributes.put("context", Map.of(
+                "qpid.amqp_port", String.valueOf(AMQP_PORT),
+                "qpid.work_dir", workDir.toString()));
+        broker = new SystemLauncher();
+        broker.startup(attributes);
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        if(broker != null) broker.shutdown();
+    }
+
+    @DynamicPropertySource
+    static void harnessProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.rabbitmq.host", () -> "localhost");
+        registry.add("spring.rabbitmq.port", () -> AMQP_PORT);
+        registry.add("spring.rabbitmq.username", () -> "guest");
+        registry.add("spring.rabbitmq.password", () -> "guest");
+        registry.add("server.port", () -> HTTP_PORT);
+        registry.add("gemini.api.stream-url", () -> "http://localhost:" + HTTP_PORT + "/stub/gemini/stream?key=");
+    }
+
+    @Test
+    void measureThroughput() throws InterruptedException {
+        Random random = new Random(42);
+        Map<String, Long> publishedAt = new HashMap<>(activityCount * 2);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < activityCount; i++) {
+            Activity activity = generateActivity(i, random);
+            long now = System.currentTimeMillis();
+            publishedAt.put(activity.getId(), now);
+            rabbitTemplate.convertAndSend(exchange, routingKey, activity, message -> {
+                message.getMessageProperties().setTimestamp(new Date(now));
+                return message;
+            });
+        }
+
+        long deadline = start + timeout.toMillis();
+        long maxDepth = 0;
+        long done;
+        long parked;
+        do {
+            TimeUnit.MILLISECONDS.sleep(250);
+            maxDepth = Math.max(maxDepth, messageCount(queueName));
+            done = recommendationRepository.countByProvisionalFalse();
+            parked = messageCount(parkingLotQueue);
+        } while (done + parked < activityCount && System.currentTimeMillis() < deadline);
+        long elapsedMs = System.currentTimeMillis() - start;
+
+        // createdAt is kept from the provisional insert, so it marks when the user first sees a recommendation;
+        // completedAt marks the save of the final analysis
+        List<Long> latencies = new ArrayList<>(activityCount);
+        List<Long> firstResultLatencies = new ArrayList<>(activityCount);
+        for (Recommendation recommendation : recommendationRepository.findAll()) {
+            Long published = publishedAt.get(recommendation.getActivityId());
+            if(published == null) continue;
+            if(recommendation.getCompletedAt() != null) latencies.add(Math.max(0, epochMillis(recommendation.getCompletedAt()) - published));
+            if(recommendation.getCreatedAt() != null) firstResultLatencies.add(Math.max(0, epochMillis(recommendation.getCreatedAt()) - published));
+        }
+        latencies.sort(null);
+        firstResultLatencies.sort(null);
+
+        double throughput = done * 1000.0 / elapsedMs;
+        Timer queueAge = meterRegistry.find("ai.queue.message.age").tag("lane", "fresh").timer();
+
+        System.out.printf("""
+
+                ===== Recommendation pipeline harness =====
+                activities        %d published, %d completed, %d parked%s
+                elapsed           %d ms
+                throughput        %.2f activities/s
+                latency p50/p90   %d / %d ms
+                latency p99/max   %d / %d ms
+                first p50/p99     %d / %d ms
+                queue depth max   %d
+                queue age mean    %.0f ms (max %.0f ms)
+                ===========================================
+                %n""",
+                activityCount, done, parked, done + parked < activityCount ? " (timed out)" : "",
+                elapsedMs,
+                throughput,
+                percentile(latencies, 0.50), percentile(latencies, 0.90),
+                percentile(latencies, 0.99), percentile(latencies, 1.0),
+                percentile(firstResultLatencies, 0.50), percentile(firstResultLatencies, 0.99),
+                maxDepth,
+                queueAge == null ? 0 : queueAge.mean(TimeUnit.MILLISECONDS),
+                queueAge == null ? 0 : queueAge.max(TimeUnit.MILLISECONDS));
+
+        assertTrue(done + parked >= activityCount, "Harness timed out before all activities were processed");
+        assertTrue(throughput >= minThroughput,
+                String.format("Throughput %.2f activities/s is below the required %.2f", throughput, minThroughput));
+    }
+
+    private Activity generateActivity(int index, Random random) {
+        int[] heartRate = new int[600];
+        double[] pace = new double[600];
+        for (int i = 0; i < heartRate.length; i++) {
+            heartRate[i] = 110 + random.nextInt(70);
+            pace[i] = 300 + random.nextDouble() * 120;
+        }
+        return Activity.builder()
+                .id(String.format("%024x", index))
+                .userId("harness-user-" + (index % 50))
+                .type(TYPES[index % TYPES.length])
+                .duration(20 + random.nextInt(70))
+                .caloriesBurned(150 + random.nextInt(700))
+                .additionalMetrics(ActivityMetrics.builder()
+                        .distance(3 + random.nextDouble() * 20)
+                        .avgHeartRate(140 + random.nextInt(30))
+                        .maxHeartRate(170 + random.nextInt(20))
+                        .heartRateSamples(heartRate)
+                        .paceSamples(pace)
+                        .build())
+                .build();
+    }
+
+    private long messageCount(String queue) {
+        QueueInformation info = amqpAdmin.getQueueInfo(queue);
+        return info == null ? 0 : info.getMessageCount();
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static long percentile(List<Long> sorted, double quantile) {
+        if(sorted.isEmpty()) return 0;
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }catch (IOException e){
+            throw new IllegalStateException("No free port for the harness", e);
+        }
+    }
+}
@@ -1,10 +1,60 @@
 package com.fitness.aiservice.config;
 
+import com.fitness.aiservice.model.ActivityClaim;
+import com.fitness.aiservice.model.CachedAnalysis;
+import com.fitness.aiservice.model.Recommendation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 
+import java.time.Duration;
+
+@Slf4j
 @Configuration
 @EnableMongoAuditing
 public class MongodbConfig {
 
+    @Value("${ai.recommendation-cache.persistent-ttl:7d}")
+    private Duration persistentCacheTtl;
+    // Longer than any single analysis, so only claims of crashed consumers run out
+    @Value("${ai.idempotency.claim-ttl:10m}")
+    private Duration claimTtl;
+
+    @Bean
+    public ApplicationRunner recommendationIndexInitializer(MongoTemplate mongoTemplate){
+        return args -> {
+            // Persistent tier of the fingerprint cache expires on its own
+            mongoTemplate.indexOps(CachedAnalysis.class).ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .expire(persistentCacheTtl)
+                    .named("created_ttl"));
+
+            mongoTemplate.indexOps(ActivityClaim.class).ensureIndex(new Index()
+                    .on("claimedAt", Sort.Direction.ASC)
+                    .expire(claimTtl)
+                    .named("claimed_ttl"));
+
+            // Serves the keyset-paged history of a user
+            mongoTemplate.indexOps(Recommendation.class).ensureIndex(new Index()
+                    .on("userId", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("user_created_id"));
+            try {
+                mongoTemplate.indexOps(Recommendation.class).ensureIndex(new Index()
+                        .on("activityId", Sort.Direction.ASC)
+                        .unique()
+                        .named("activity_unique"));
+            }catch (DataAccessException e){
+                log.error("Could not create the unique activityId index, remove duplicate recommendations first: {}", e.getMessage());
+            }
+        };
+    }
 }
@@ -1,14 +1,124 @@
 package com.fitness.aiservice.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declares the consumer side of the activity pipeline. Besides the fresh and backfill lanes, failed
+ * messages are parked in tiered retry queues whose TTL dead-letters them back onto the lane they failed
+ * on, and land in the parking lot once every tier has been tried.
+ */
 @Configuration
 public class RabbitMQConfig {
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+    @Value("${rabbitmq.queue.name}")
+    private String queueName;
+    @Value("${rabbitmq.queue.backfill-name:activity.backfill.queue}")
+    private String backfillQueueName;
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+    @Value("${rabbitmq.routing.backfill-key:activity.backfill}")
+    private String backfillRoutingKey;
+    @Value("${ai.retry.exchange:fitness.retry.exchange}")
+    private String retryExchange;
+    @Value("${ai.retry.delays-ms:5000,30000,300000}")
+    private long[] retryDelaysMs;
+    @Value("${ai.retry.parking-lot:activity.parking-lot}")
+    private String parkingLotQueue;
+
+    @Value("${ai.consumer.concurrency:4}")
+    private int concurrency;
+    @Value("${ai.consumer.max-concurrency:16}")
+    private int maxConcurrency;
+    @Value("${ai.consumer.prefetch:2}")
+    private int prefetch;
+    @Value("${ai.consumer.virtual-threads:true}")
+    private boolean virtualThreads;
+    @Value("${ai.batch.max-size:8}")
+    private int batchMaxSize;
+    @Value("${ai.batch.receive-timeout-ms:500}")
+    private long batchReceiveTimeoutMs;
+
+    @Bean
+    public Declarables activityTopology() {
+        DirectExchange activityExchange = new DirectExchange(exchange);
+        DirectExchange retry = new DirectExchange(retryExchange);
+        Queue activityQueue = new Queue(queueName, true);
+        Queue backfillQueue = new Queue(backfillQueueName, true);
+        Queue parkingLot = new Queue(parkingLotQueue, true);
+
+        List<Declarable> declarables = new ArrayList<>(List.of(activityExchange, retry, activityQueue, backfillQueue, parkingLot,
+                BindingBuilder.bind(activityQueue).to(activityExchange).with(routingKey),
+                BindingBuilder.bind(backfillQueue).to(activityExchange).with(backfillRoutingKey),
+                BindingBuilder.bind(parkingLot).to(retry).with(parkingLotQueue)));
+        for (long delayMs : retryDelaysMs) {
+            // Nothing consumes a retry queue; expired messages return to the lane they came from
+            addRetryTier(declarables, retry, retryQueueName(delayMs), delayMs, backfillRoutingKey);
+            addRetryTier(declarables, retry, freshRetryQueueName(delayMs), delayMs, routingKey);
+        }
+        return new Declarables(declarables);
+    }
+
+    private void addRetryTier(List<Declarable> declarables, DirectExchange retry, String name, long delayMs, String returnRoutingKey) {
+        Queue tier = QueueBuilder.durable(name)
+                .ttl((int) delayMs)
+                .deadLetterExchange(exchange)
+                .deadLetterRoutingKey(returnRoutingKey)
+                .build();
+        declarables.add(tier);
+        declarables.add(BindingBuilder.bind(tier).to(retry).with(tier.getName()));
+    }
+
+    public static String retryQueueName(long delayMs) {
+        return "activity.retry." + delayMs + "ms";
+    }
+
+    public static String freshRetryQueueName(long delayMs) {
+        return "activity.retry.fresh." + delayMs + "ms";
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
     }
-}
\ No newline at end of file
+
+    // Consumers spend most of their time waiting on the LLM, so they run on virtual threads by default
+    // and messages are acked only after the listener has saved the recommendation
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                               ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(maxConcurrency);
+        // Each consumer gathers a micro-batch of activities for one LLM prompt, so it must be able to prefetch a full batch
+        factory.setPrefetchCount(Math.max(prefetch, batchMaxSize));
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchMaxSize);
+        // Idle gap, not a total window: a batch is handed over once full or once no message arrives for this long
+        factory.setReceiveTimeout(batchReceiveTimeoutMs);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        if(virtualThreads) factory.setTaskExecutor(new VirtualThreadTaskExecutor("ai-consumer-"));
+        return factory;
+    }
+}
@@ -1,13 +1,19 @@
 package com.fitness.aiservice.controller;
 
+import com.fitness.aiservice.dto.RecommendationPageResponse;
 import com.fitness.aiservice.model.Recommendation;
 import com.fitness.aiservice.service.RecommendationService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -19,12 +25,33 @@ public class RecommendationController {
 
     @GetMapping("/user/{userId}")
     public ResponseEntity<List<Recommendation>> getUserRecommendation(@PathVariable String userId){
-        return ResponseEntity.ok(recommendationService.getUserRecommendations(userId));
+        List<Recommendation> recommendations = recommendationService.getUserRecommendations(userId);
+        return ok(recommendations.stream().anyMatch(Recommendation::isProvisional)).body(recommendations);
+    }
+
+    // Summaries only, newest first; pass nextCursor back to get the following page
+    @GetMapping("/user/{userId}/page")
+    public ResponseEntity<RecommendationPageResponse> getUserRecommendationPage(@PathVariable String userId,
+                                                                                @RequestParam(required = false) String cursor,
+                                                                                @RequestParam(required = false) Integer limit){
+        return ResponseEntity.ok(recommendationService.getUserRecommendationsPage(userId, cursor, limit));
     }
 
     @GetMapping("/activity/{activityId}")
     public ResponseEntity<Recommendation> getActivityRecommendation(@PathVariable String activityId){
-        return ResponseEntity.ok(recommendationService.getActivityRecommendation(activityId));
+        Recommendation recommendation = recommendationService.getActivityRecommendation(activityId);
+        return ok(recommendation.isProvisional()).body(recommendation);
+    }
+
+    // Pushes "partial" events with analysis text while it is generated, then one "recommendation" event
+    @GetMapping(value = "/activity/{activityId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamActivityRecommendation(@PathVariable String activityId){
+        return recommendationService.streamActivityRecommendation(activityId);
+    }
+
+    // Provisional recommendations are about to be replaced, so caches must not keep them
+    private ResponseEntity.BodyBuilder ok(boolean provisional){
+        return provisional ? ResponseEntity.ok().cacheControl(CacheControl.noStore()) : ResponseEntity.ok();
     }
 
 }
@@ -0,0 +1,141 @@
+package com.fitness.aiservice.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Offline stand-in for the Gemini API, enabled with the llm-stub profile. It answers in Gemini's response
+ * format after a configurable latency and fails a configurable share of calls with 429 or 500, so the
+ * rate limiter, retries and circuit breaker can be exercised without an API key.
+ */
+@RestController
+@Profile("llm-stub")
+@RequestMapping("/stub/gemini")
+public class StubGeminiController {
+
+    private static final Pattern ACTIVITY_ID = Pattern.compile("Activity ID: (\\S+)");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Value("${stub.gemini.latency-ms:300}")
+    private long latencyMs;
+    @Value("${stub.gemini.jitter-ms:200}")
+    private long jitterMs;
+    @Value("${stub.gemini.throttle-rate:0.0}")
+    private double throttleRate;
+    @Value("${stub.gemini.error-rate:0.0}")
+    private double errorRate;
+    @Value("${stub.gemini.chunk-size:40}")
+    private int chunkSize;
+    @Value("${stub.gemini.chunk-delay-ms:50}")
+    private long chunkDelayMs;
+
+    @PostMapping
+    public Mono<ResponseEntity<String>> generateContent(@RequestBody JsonNode request){
+        // Delays on a timer instead of sleeping, which would stall the Netty event loop
+        return Mono.delay(latency())
+                .map(tick -> {
+                    ResponseEntity<String> failure = injectedFailure();
+                    return failure != null ? failure : ResponseEntity.ok(generateResponse(answerText(request)));
+                });
+    }
+
+    // Mirrors streamGenerateContent?alt=sse: the answer text split over several events
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<Flux<ServerSentEvent<String>>>> streamGenerateContent(@RequestBody JsonNode request){
+        return Mono.delay(latency())
+                .map(tick -> {
+                    ResponseEntity<String> failure = injectedFailure();
+                    if(failure != null) return ResponseEntity.status(failure.getStatusCode()).<Flux<ServerSentEvent<String>>>build();
+
+                    String text = answerText(request);
+                    List<String> chunks = new ArrayList<>();
+                    for (int i = 0; i < text.length(); i += chunkSize) {
+                        chunks.add(text.substring(i, Math.min(text.length(), i + chunkSize)));
+                    }
+                    Flux<ServerSentEvent<String>> events = Flux.fromIterable(chunks)
+                            .delayElements(Duration.ofMillis(chunkDelayMs))
+                            .map(chunk -> ServerSentEvent.builder(generateResponse(chunk)).build());
+                    return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(events);
+                });
+    }
+
+    private Duration latency(){
+        return Duration.ofMillis(latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0));
+    }
+
+    private ResponseEntity<String> injectedFailure(){
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if(roll < throttleRate){
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body("{\"error\":{\"code\":429,\"status\":\"RESOURCE_EXHAUSTED\"}}");
+        }
+        if(roll < throttleRate + errorRate){
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("{\"error\":{\"code\":500,\"status\":\"INTERNAL\"}}");
+        }
+        return null;
+    }
+
+    private String answerText(JsonNode request){
+        String prompt = request.path("contents").path(0).path("parts").path(0).path("text").asText();
+        List<String> activityIds = new ArrayList<>();
+        Matcher matcher = ACTIVITY_ID.matcher(prompt);
+        while (matcher.find()) activityIds.add(matcher.group(1));
+
+        JsonNode analysis;
+        if(activityIds.isEmpty()){
+            analysis = analysis(null);
+        }else{
+            ArrayNode analyses = MAPPER.createArrayNode();
+            activityIds.forEach(id -> analyses.add(analysis(id)));
+            analysis = analyses;
+        }
+        return "```json\n" + analysis + "\n```";
+    }
+
+    private String generateResponse(String text){
+        ObjectNode response = MAPPER.createObjectNode();
+        response.putArray("candidates").addObject()
+                .putObject("content")
+                .putArray("parts").addObject()
+                .put("text", text);
+        return response.toString();
+    }
+
+    private ObjectNode analysis(String activityId){
+        ObjectNode node = MAPPER.createObjectNode();
+        if(activityId != null) node.put("activityId", activityId);
+        ObjectNode analysis = node.putObject("analysis");
+        analysis.put("overall", "Steady session with consistent effort");
+        analysis.put("pace", "Pace was even throughout");
+        analysis.put("heartrate", "Heart rate stayed in the aerobic zone");
+        analysis.put("caloriesBurned", "Calorie burn matches the duration and intensity");
+        node.putArray("improvements").addObject()
+                .put("areas", "Endurance")
+                .put("recommendation", "Extend the next session by ten minutes");
+        node.putArray("suggestions").addObject()
+                .put("workout", "Interval run")
+                .put("description", "6 x 400m at a hard effort with 90s recovery");
+        node.putArray("safety").add("Warm up before starting").add("Stay hydrated");
+        return node;
+    }
+}
@@ -0,0 +1,13 @@
+package com.fitness.aiservice.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class RecommendationPageResponse {
+    private List<RecommendationSummary> recommendations;
+    private String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.fitness.aiservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// List-view projection of a recommendation; the analysis text and lists are only served by the detail endpoint
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecommendationSummary {
+    private String id;
+    private String activityId;
+    private String activityType;
+    private boolean provisional;
+    private LocalDateTime createdAt;
+}
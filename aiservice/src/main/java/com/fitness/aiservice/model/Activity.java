@@ -6,7 +6,6 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Data
 @Builder
@@ -19,7 +18,7 @@ public class Activity {
     private String type;
     private Integer caloriesBurned;
     private LocalDateTime startTime;
-    private Map<String, Object> additionalMetrics;
+    private ActivityMetrics additionalMetrics;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
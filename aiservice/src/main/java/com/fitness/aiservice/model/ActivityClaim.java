@@ -0,0 +1,26 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marks an activity as being analyzed by one consumer. The activity id is the document id, so a
+ * second consumer's claim fails on the primary key; claims of crashed consumers expire by TTL.
+ */
+@Document(collection = "recommendation_claims")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityClaim {
+    @Id
+    private String activityId;
+    private String owner;
+    private LocalDateTime claimedAt;
+}
@@ -0,0 +1,55 @@
+package com.fitness.aiservice.model;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed metrics of an activity. Known metrics are plain fields and sample series are primitive arrays;
+ * any other key sent by a client lands in {@code extra} and is written back out as a top-level key.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class ActivityMetrics {
+    private Double distance;
+    @JsonAlias("avg_heart_rate")
+    private Integer avgHeartRate;
+    @JsonAlias("max_heart_rate")
+    private Integer maxHeartRate;
+    // Seconds per kilometre
+    @JsonAlias("avg_pace_seconds")
+    private Double avgPace;
+    @JsonAlias("elevation_gain")
+    private Double elevationGain;
+
+    private int[] heartRateSamples;
+    private double[] paceSamples;
+    private double[] elevationSamples;
+
+    @Setter(AccessLevel.NONE)
+    private Map<String, Object> extra;
+
+    @JsonAnyGetter
+    public Map<String, Object> getExtra() {
+        return extra;
+    }
+
+    @JsonAnySetter
+    public void putExtra(String key, Object value) {
+        if(extra == null) extra = new HashMap<>();
+        extra.put(key, value);
+    }
+}
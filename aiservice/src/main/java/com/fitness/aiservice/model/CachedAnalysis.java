@@ -0,0 +1,30 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * LLM analysis stored under the fingerprint of the activity it was generated for, so that
+ * near-identical activities can reuse it.
+ */
+@Document(collection = "recommendation_cache")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CachedAnalysis {
+    @Id
+    private String fingerprint;
+    private String recommendation;
+    private List<String> improvement;
+    private List<String> suggestion;
+    private List<String> safety;
+    private LocalDateTime createdAt;
+}
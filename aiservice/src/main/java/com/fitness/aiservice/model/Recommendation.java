@@ -22,8 +22,12 @@ public class Recommendation {
     private List<String> improvement;
     private List<String> suggestion;
     private List<String> safety;
+    // Rule-based stand-in, replaced once the LLM analysis is saved
+    private boolean provisional;
 
     @CreatedDate
     private LocalDateTime createdAt;
+    // When the final, non-provisional recommendation was saved
+    private LocalDateTime completedAt;
 
 }
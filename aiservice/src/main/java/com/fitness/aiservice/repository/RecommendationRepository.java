@@ -8,7 +8,8 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface RecommendationRepository extends MongoRepository<Recommendation, String> {
+public interface RecommendationRepository extends MongoRepository<Recommendation, String>, RecommendationRepositoryCustom {
     public List<Recommendation> findByUserId(String userId);
     public Optional<Recommendation> findByActivityId(String activityId);
+    public long countByProvisionalFalse();
 }
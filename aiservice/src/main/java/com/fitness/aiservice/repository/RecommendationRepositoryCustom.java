@@ -0,0 +1,16 @@
+package com.fitness.aiservice.repository;
+
+import com.fitness.aiservice.dto.RecommendationSummary;
+import com.fitness.aiservice.model.Recommendation;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RecommendationRepositoryCustom {
+
+    // Keyset page of a user's recommendations, newest first, starting after the given position
+    List<RecommendationSummary> findSummaryPage(String userId, LocalDateTime afterCreatedAt, String afterId, int limit);
+
+    // Inserts or replaces by activityId, which is unique, so a reprocessed activity keeps one recommendation
+    List<Recommendation> upsertAllByActivityId(List<Recommendation> recommendations);
+}
@@ -0,0 +1,97 @@
+package com.fitness.aiservice.repository;
+
+import com.fitness.aiservice.dto.RecommendationSummary;
+import com.fitness.aiservice.model.Recommendation;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class RecommendationRepositoryCustomImpl implements RecommendationRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<RecommendationSummary> findSummaryPage(String userId, LocalDateTime afterCreatedAt, String afterId, int limit) {
+        Query query = new Query(Criteria.where("userId").is(userId));
+        if(afterCreatedAt != null && afterId != null){
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("createdAt").lt(afterCreatedAt),
+                    Criteria.where("createdAt").is(afterCreatedAt).and("_id").lt(new ObjectId(afterId))
+            ));
+        }
+        query.fields().include("activityId", "activityType", "provisional", "createdAt");
+
+        // Matches the (userId, createdAt, _id) index, so each page is an index range scan of `limit` entries
+        query.with(Sort.by(Sort.Direction.DESC, "createdAt", "_id")).limit(limit);
+        return mongoTemplate.find(query, RecommendationSummary.class, mongoTemplate.getCollectionName(Recommendation.class));
+    }
+
+    @Override
+    public List<Recommendation> upsertAllByActivityId(List<Recommendation> recommendations) {
+        if(recommendations.isEmpty()) return recommendations;
+
+        LocalDateTime now = LocalDateTime.now();
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Recommendation.class);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Recommendation.class);
+        for (Recommendation recommendation : recommendations) {
+            recommendation.setCompletedAt(recommendation.isProvisional() ? null : now);
+            Document document = new Document();
+            mongoTemplate.getConverter().write(recommendation, document);
+            document.remove("_id");
+            document.remove("createdAt");
+
+            Update update = new Update();
+            document.forEach(update::set);
+            // The converter leaves null fields out, so they are unset to replace the stored document as a whole
+            entity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+                if(!property.isIdProperty() && !document.containsKey(property.getFieldName())
+                        && !"createdAt".equals(property.getFieldName())){
+                    update.unset(property.getFieldName());
+                }
+            });
+            // Bulk writes bypass auditing; the first analysis keeps its creation time and page position
+            update.setOnInsert("createdAt", now);
+            bulk.upsert(new Query(Criteria.where("activityId").is(recommendation.getActivityId())), update);
+        }
+        BulkWriteResult result = bulk.execute();
+
+        // Inserted documents report their new id; replaced ones are looked up in one query
+        Map<String, String> ids = new HashMap<>();
+        Map<String, LocalDateTime> createdAt = new HashMap<>();
+        result.getUpserts().forEach(upsert -> ids.put(recommendations.get(upsert.getIndex()).getActivityId(),
+                upsert.getId().asObjectId().getValue().toHexString()));
+        if(ids.size() < recommendations.size()){
+            Query existing = new Query(Criteria.where("activityId").in(recommendations.stream()
+                    .map(Recommendation::getActivityId)
+                    .filter(activityId -> !ids.containsKey(activityId))
+                    .toList()));
+            existing.fields().include("activityId", "createdAt");
+            mongoTemplate.find(existing, Recommendation.class).forEach(saved -> {
+                ids.put(saved.getActivityId(), saved.getId());
+                createdAt.put(saved.getActivityId(), saved.getCreatedAt());
+            });
+        }
+
+        recommendations.forEach(recommendation -> {
+            recommendation.setId(ids.get(recommendation.getActivityId()));
+            recommendation.setCreatedAt(createdAt.getOrDefault(recommendation.getActivityId(), now));
+        });
+        return recommendations;
+    }
+}
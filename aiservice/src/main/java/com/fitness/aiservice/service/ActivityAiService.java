@@ -1,7 +1,5 @@
 package com.fitness.aiservice.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fitness.aiservice.model.Activity;
 import com.fitness.aiservice.model.Recommendation;
 import lombok.RequiredArgsConstructor;
@@ -9,67 +7,84 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ActivityAiService {
     private final GeminiService geminiService;
+    private final RecommendationCacheService cacheService;
+    private final RecommendationStreamService streamService;
+    private final LlmResponseParser responseParser;
+    private final ActivityPromptBuilder promptBuilder;
+    private final HeuristicRecommendationEngine heuristicEngine;
 
     public Recommendation generateRecommendation(Activity activity){
-        String prompt = createPrompt(activity);
-        String aiResponse = geminiService.getAnswer(prompt);
+        Optional<Recommendation> cached = cacheService.lookup(activity);
+        return cached.orElseGet(() -> requestRecommendation(activity));
+    }
+
+    private Recommendation requestRecommendation(Activity activity){
+        String prompt = promptBuilder.singlePrompt(activity);
+        String aiResponse = cacheService.llmLatency().record(() -> geminiService.getAnswer(prompt,
+                text -> streamService.publishPartial(activity.getId(), text),
+                () -> streamService.publishReset(activity.getId())));
 //        log.info("Response from Ai: " + aiResponse);
         return processAiResponse(activity, aiResponse);
     }
 
-    public Recommendation processAiResponse(Activity activity, String aiResponse){
-       try{
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode rootNode = mapper.readTree(aiResponse);
-        JsonNode textNode = rootNode
-                .path("candidates")
-                .get(0)
-                .path("content")
-                .path("parts")
-                .get(0)
-                .path("text");
-
-        String jsonContent = textNode.asText()
-                .replaceAll("```json\\n", "")
-                .replaceAll("\\n```", "").trim();
-
-        log.info("Parsed response : {}", jsonContent);
-
-        // Crafting analysis fields from jsonContent
-        StringBuilder fullAnalysis = new StringBuilder();
-        JsonNode analysisJson = mapper.readTree(jsonContent);
-        JsonNode analysisNode = analysisJson.path("analysis");
-        parseAnalysis(fullAnalysis, analysisNode, "overall", "Overall:");
-        parseAnalysis(fullAnalysis, analysisNode, "pace", "Pace:");
-        parseAnalysis(fullAnalysis, analysisNode, "heartrate", "Heart Rate:");
-        parseAnalysis(fullAnalysis, analysisNode, "caloriesBurned", "Calories Burned:");
-
-        // Extracting Improvement Fields from jsonContent or ai response
-           List<String> improvements = extractImprovements(analysisJson.path("improvements"));
+    /**
+     * Analyzes several activities with a single LLM request. Activities whose analysis is missing or
+     * malformed in the batched answer fall back to a request of their own, as do activities someone is
+     * watching live, since a batched answer cannot be streamed per activity. If the batched request itself
+     * fails, the exception is left to the caller so the batch is retried as a whole.
+     */
+    public List<Recommendation> generateRecommendations(List<Activity> activities){
+        Map<String, Recommendation> cachedRecommendations = new HashMap<>();
+        List<Activity> uncached = new ArrayList<>(activities.size());
+        for (Activity activity : activities) {
+            cacheService.lookup(activity).ifPresentOrElse(
+                    recommendation -> cachedRecommendations.put(activity.getId(), recommendation),
+                    () -> {
+                        if(!streamService.isStreaming(activity.getId())) uncached.add(activity);
+                    });
+        }
 
-           // Extracting Suggestions Fields from jsonContent or ai response
-           List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
+        Map<String, Recommendation> analyses = new HashMap<>();
+        if(uncached.size() > 1){
+            // A failed batch request is not retried item by item, which would multiply LLM calls exactly when
+            // it is struggling; the exception sends the whole batch to the retry tiers instead
+            String prompt = promptBuilder.batchPrompt(uncached);
+            String aiResponse = cacheService.llmLatency().record(() -> geminiService.getAnswer(prompt));
+            analyses = responseParser.parseBatch(aiResponse);
+        }
 
-           // Extracting Suggestions Fields from jsonContent or ai response
-           List<String> safetyGuidelines = extractSafetyGuidelines(analysisJson.path("safety"));
+        List<Recommendation> recommendations = new ArrayList<>(activities.size());
+        for (Activity activity : activities) {
+            Recommendation cached = cachedRecommendations.get(activity.getId());
+            Recommendation analysis = analyses.get(activity.getId());
+            if(cached != null){
+                recommendations.add(cached);
+            }else if(analysis != null){
+                Recommendation recommendation = withActivity(analysis, activity);
+                cacheService.store(activity, recommendation);
+                recommendations.add(recommendation);
+            }else{
+                recommendations.add(requestRecommendation(activity));
+            }
+        }
+        return recommendations;
+    }
 
-           return Recommendation.builder()
-                   .activityId(activity.getId())
-                   .userId(activity.getUserId())
-                   .activityType(activity.getType())
-                   .recommendation(fullAnalysis.toString().trim())
-                   .improvement(improvements)
-                   .suggestion(suggestions)
-                   .safety(safetyGuidelines).build();
+    public Recommendation processAiResponse(Activity activity, String aiResponse){
+       try{
+        Recommendation recommendation = withActivity(responseParser.parseRecommendation(aiResponse), activity);
+        cacheService.store(activity, recommendation);
+        return recommendation;
 
        }catch (Exception e){
            log.error(e.getMessage());
@@ -77,102 +92,18 @@ public class ActivityAiService {
        }
     }
 
-    private Recommendation createDefaultRecommendation(Activity activity) {
-        return Recommendation.builder()
-                .activityId(activity.getId())
-                .activityType(activity.getType())
-                .recommendation("Unable to generate detailed analysis")
-                .improvement(Collections.singletonList("Continue with the current routine"))
-                .suggestion(Collections.singletonList("Consider consulting a fitness professional"))
-                .safety(Arrays.asList("Always warmup before exercise", "Stay hydrated", "Listen to your body"))
-                .build();
-    }
-
-    private List<String> extractSafetyGuidelines(JsonNode safetyNode) {
-        List<String> safetyGuidelines = new ArrayList<>();
-        if(safetyNode.isArray()){
-            safetyNode.forEach(safety ->{
-                safetyGuidelines.add(safety.asText());
-            });
-        }
-        return safetyGuidelines.isEmpty() ? Collections.singletonList("Follow general safety guidelines") : safetyGuidelines;
-    }
-
-    private List<String> extractSuggestions(JsonNode suggestionsNode) {
-        List<String> suggestions = new ArrayList<>();
-        if(suggestionsNode.isArray()){
-            suggestionsNode.forEach(suggestion -> {
-                String area = suggestion.path("workout").asText();
-                String description = suggestion.path("description").asText();
-                suggestions.add(String.format("%s : %s", area, description));
-            });
-        }
-        return suggestions.isEmpty() ? Collections.singletonList("No Suggestion provided") : suggestions;
+    private Recommendation withActivity(Recommendation recommendation, Activity activity){
+        recommendation.setActivityId(activity.getId());
+        recommendation.setUserId(activity.getUserId());
+        recommendation.setActivityType(activity.getType());
+        return recommendation;
     }
 
-    private List<String> extractImprovements(JsonNode improvementNode) {
-        List<String> improvements = new ArrayList<>();
-        if(improvementNode.isArray()){
-            improvementNode.forEach(improvement -> {
-                String area = improvement.path("areas").asText();
-                String detail = improvement.path("recommendation").asText();
-                improvements.add(String.format("%s : %s", area, detail));
-            });
-        }
-
-        return improvements.isEmpty() ? Collections.singletonList("No specific improvement provided") : improvements;
-
-    }
-
-    private void parseAnalysis(StringBuilder fullAnalysis, JsonNode analysisNode, String key, String prefix) {
-        if(!analysisNode.isMissingNode()){
-            fullAnalysis.append(prefix)
-                    .append(analysisNode.path(key).asText())
-                    .append("\n\n");
-        }
-    }
-
-    private String createPrompt(Activity activity) {
-        return String.format("""
-                Analyze this fitness activity and provide detailed recommendations in the following 
-                {
-                  "analysis": {
-                    "overall": "Overall analysis here",
-                    "pace": "Pace analysis here",
-                    "heartrate": "Heartrate analysis here",
-                    "caloriesBurned": "Calories analysis here"
-                  },
-                  "improvements": [
-                    {
-                      "areas": "Area name",
-                      "recommendation": "Detailed recommendation"
-                    }
-                  ],
-                  "suggestions": [
-                    {
-                      "workout": "Workout name",
-                      "description": "Detailed workout description"
-                    }
-                  ],
-                  "safety": [
-                    "Safety point 1",
-                    "Safety point 2"
-                  ]
-                }
-                
-                Analyze this activity:
-                Activity Type : %s
-                Duration: %d minutes
-                Calories Burned: %d
-                Additional Metrics: %s
-                
-                Provide detailed analysis focusing on performance, improvements, next workout suggestions and safety guidelines.
-                Ensure the response follows the EXACT JSON format shown above
-                """,
-                activity.getType(),
-                activity.getDuration(),
-                activity.getCaloriesBurned(),
-                activity.getAdditionalMetrics()
-                );
+    // An unusable LLM answer makes the rule-based analysis the final result. Left provisional, it would keep
+    // streams and pollers waiting for an analysis that this delivery, already completed, never produces
+    private Recommendation createDefaultRecommendation(Activity activity) {
+        Recommendation recommendation = heuristicEngine.recommend(activity);
+        recommendation.setProvisional(false);
+        return recommendation;
     }
 }
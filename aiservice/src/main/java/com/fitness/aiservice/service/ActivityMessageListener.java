@@ -6,23 +6,108 @@ import com.fitness.aiservice.repository.RecommendationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ActivityMessageListener {
 
+    private static final String FRESH_LANE = "fresh";
+    private static final String BACKFILL_LANE = "backfill";
+
     private final ActivityAiService aiService;
     private final RecommendationRepository recommendationRepository;
+    private final RecommendationStreamService streamService;
+    private final ActivityRetryRouter retryRouter;
+    private final ActivityQueueMetrics queueMetrics;
+    private final LlmCircuitBreaker circuitBreaker;
+    private final RecommendationIdempotencyGuard idempotencyGuard;
+    private final HeuristicRecommendationEngine heuristicEngine;
+
+    // The container hands over up to ai.batch.max-size activities, or fewer once the queue has been idle for
+    // ai.batch.receive-timeout-ms; the whole batch is acked once its recommendations are saved
+    @RabbitListener(id = ListenerCircuitControl.ACTIVITY_LISTENER_ID, queues = "${rabbitmq.queue.name}")
+    public void processActivities(List<Message<Activity>> messages){
+        process(FRESH_LANE, messages);
+    }
+
+    // Backfill and retried activities get only a few consumers, so live activities keep most of the LLM capacity
+    @RabbitListener(id = ListenerCircuitControl.BACKFILL_LISTENER_ID,
+            queues = "${rabbitmq.queue.backfill-name:activity.backfill.queue}",
+            concurrency = "${ai.consumer.backfill-concurrency:1}")
+    public void processBackfill(List<Message<Activity>> messages){
+        process(BACKFILL_LANE, messages);
+    }
+
+    private void process(String lane, List<Message<Activity>> messages){
+        queueMetrics.recordAge(lane, messages);
+        // Redeliveries of finished activities are acked with the batch without touching the LLM. Activities
+        // claimed by another consumer are put back, since that consumer may have died holding the claim
+        RecommendationIdempotencyGuard.ClaimResult claims = idempotencyGuard.claim(messages.stream().map(Message::getPayload).toList());
+        Set<String> claimed = new HashSet<>(claims.owned());
+        Set<String> claimedElsewhere = new HashSet<>(claims.claimedElsewhere());
+        List<Message<Activity>> owned = new ArrayList<>(claimed.size());
+        List<Message<Activity>> deferred = new ArrayList<>(claimedElsewhere.size());
+        for (Message<Activity> message : messages) {
+            String activityId = message.getPayload().getId();
+            if(claimed.remove(activityId)) owned.add(message);
+            else if(claimedElsewhere.remove(activityId)) deferred.add(message);
+        }
+
+        List<Activity> activities = owned.stream().map(Message::getPayload).toList();
+        List<String> activityIds = activities.stream().map(Activity::getId).toList();
+        if(!deferred.isEmpty()){
+            try {
+                retryRouter.defer(deferred, FRESH_LANE.equals(lane));
+            }catch (RuntimeException e){
+                // The whole batch is redelivered, and it must not find its own claims in the way
+                idempotencyGuard.release(activityIds);
+                throw e;
+            }
+        }
+        if(owned.isEmpty()) return;
+
+        log.info("Received {} {} activities for processing : {}", activities.size(), lane, activityIds);
+        saveProvisional(activities);
+        try {
+            List<Recommendation> recommendations = aiService.generateRecommendations(activities);
+            List<Recommendation> savedRecommendations = recommendationRepository.upsertAllByActivityId(recommendations);
+            log.info("Saved {} recommendations to repo", savedRecommendations.size());
+            idempotencyGuard.complete(activityIds);
+            savedRecommendations.forEach(streamService::publishRecommendation);
+        }catch (LlmUnavailableException e){
+            idempotencyGuard.release(activityIds);
+            // With the circuit open the consumers are about to pause, so the batch simply waits in its queue
+            if(circuitBreaker.getState() != LlmCircuitBreaker.State.CLOSED) throw e;
+            routeToRetry(lane, owned, e);
+        }catch (RuntimeException e){
+            // Includes rejected and malformed LLM answers: they get the retry tiers and then the parking lot, never a requeue
+            idempotencyGuard.release(activityIds);
+            routeToRetry(lane, owned, e);
+        }
+    }
+
+    // Users get a rule-based recommendation right away; the LLM analysis replaces it when it is saved
+    private void saveProvisional(List<Activity> activities){
+        try {
+            List<Recommendation> provisional = recommendationRepository.upsertAllByActivityId(
+                    activities.stream().map(heuristicEngine::recommend).toList());
+            provisional.forEach(streamService::publishProvisional);
+        }catch (RuntimeException e){
+            log.warn("Could not save provisional recommendations: {}", e.getMessage());
+        }
+    }
 
-    @RabbitListener(queues = "activity.queue")
-    public void processActivity(Activity activity){
-        log.info("Received activity for processing : {}", activity.getId());
-//        log.info("Generated Recommendation : {}", aiService.generateRecommendation(activity));
-        Recommendation recommendation = aiService.generateRecommendation(activity);
-        Recommendation savedRecommendation = recommendationRepository.save(recommendation);
-        log.info("Saved recommendation to repo: {}", savedRecommendation);
+    // Throws when the broker does not confirm the retries, so the batch is redelivered rather than acked
+    private void routeToRetry(String lane, List<Message<Activity>> messages, RuntimeException e){
+        log.error("Processing of {} activities failed, scheduling retries: {}", messages.size(), e.getMessage());
+        retryRouter.routeFailed(messages, FRESH_LANE.equals(lane));
     }
 }
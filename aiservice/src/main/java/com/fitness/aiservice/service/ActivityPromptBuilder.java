@@ -0,0 +1,259 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Builds LLM prompts from fixed text fragments assembled once, into pooled buffers. Metrics are
+ * summarized instead of dumped: sample series become min/avg/max plus a short downsampled trend, and
+ * keys the model is not told about are dropped. When a prompt would exceed the token budget the
+ * metric detail is reduced step by step until it fits.
+ */
+@Slf4j
+@Component
+public class ActivityPromptBuilder {
+
+    private static final String RESPONSE_FORMAT = """
+            {
+              "analysis": {
+                "overall": "Overall analysis here",
+                "pace": "Pace analysis here",
+                "heartrate": "Heartrate analysis here",
+                "caloriesBurned": "Calories analysis here"
+              },
+              "improvements": [
+                {
+                  "areas": "Area name",
+                  "recommendation": "Detailed recommendation"
+                }
+              ],
+              "suggestions": [
+                {
+                  "workout": "Workout name",
+                  "description": "Detailed workout description"
+                }
+              ],
+              "safety": [
+                "Safety point 1",
+                "Safety point 2"
+              ]
+            }
+            """;
+
+    private static final String SINGLE_HEADER = """
+            Analyze this fitness activity and provide detailed recommendations in the following
+            """ + RESPONSE_FORMAT + "Analyze this activity:\n";
+    private static final String SINGLE_FOOTER = """
+
+            Provide detailed analysis focusing on performance, improvements, next workout suggestions and safety guidelines.
+            Ensure the response follows the EXACT JSON format shown above
+            """;
+    private static final String BATCH_HEADER = """
+            Analyze each of the following fitness activities and provide detailed recommendations.
+            Respond with a JSON array containing exactly one object per activity. Each object must have an
+            "activityId" field copied from the activity, plus the fields of the following format
+            """ + RESPONSE_FORMAT + "\nAnalyze these activities:\n";
+    private static final String BATCH_FOOTER = """
+
+            Provide detailed analysis focusing on performance, improvements, next workout suggestions and safety guidelines.
+            Ensure the response is a JSON array whose objects follow the EXACT JSON format shown above
+            """;
+
+    // Rough rule of thumb for English text with the Gemini tokenizer
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private enum Detail { FULL, STATS, SCALARS }
+
+    private final int maxTokens;
+    private final int seriesPoints;
+    private final Queue<StringBuilder> buffers = new ConcurrentLinkedQueue<>();
+    private final DistributionSummary singleChars;
+    private final DistributionSummary singleTokens;
+    private final DistributionSummary batchChars;
+    private final DistributionSummary batchTokens;
+    private final MeterRegistry meterRegistry;
+
+    public ActivityPromptBuilder(MeterRegistry meterRegistry,
+                                 @Value("${ai.prompt.max-tokens:2000}") int maxTokens,
+                                 @Value("${ai.prompt.series-points:12}") int seriesPoints){
+        this.meterRegistry = meterRegistry;
+        this.maxTokens = maxTokens;
+        this.seriesPoints = seriesPoints;
+        this.singleChars = meterRegistry.summary("ai.prompt.size.chars", "kind", "single");
+        this.singleTokens = meterRegistry.summary("ai.prompt.tokens.estimated", "kind", "single");
+        this.batchChars = meterRegistry.summary("ai.prompt.size.chars", "kind", "batch");
+        this.batchTokens = meterRegistry.summary("ai.prompt.tokens.estimated", "kind", "batch");
+    }
+
+    public String singlePrompt(Activity activity){
+        StringBuilder prompt = borrow();
+        try {
+            for (Detail detail : Detail.values()) {
+                prompt.setLength(0);
+                prompt.append(SINGLE_HEADER);
+                appendActivity(prompt, activity, detail, "\n");
+                prompt.append(SINGLE_FOOTER);
+                if(fits(prompt, detail)) break;
+            }
+            return finish(prompt, singleChars, singleTokens);
+        }finally {
+            release(prompt);
+        }
+    }
+
+    public String batchPrompt(List<Activity> activities){
+        StringBuilder prompt = borrow();
+        try {
+            for (Detail detail : Detail.values()) {
+                prompt.setLength(0);
+                prompt.append(BATCH_HEADER);
+                for (Activity activity : activities) {
+                    prompt.append("- Activity ID: ").append(activity.getId()).append(" | ");
+                    appendActivity(prompt, activity, detail, " | ");
+                }
+                prompt.append(BATCH_FOOTER);
+                if(fits(prompt, detail)) break;
+            }
+            return finish(prompt, batchChars, batchTokens);
+        }finally {
+            release(prompt);
+        }
+    }
+
+    private void appendActivity(StringBuilder prompt, Activity activity, Detail detail, String separator){
+        prompt.append("Activity Type : ").append(activity.getType()).append(separator)
+                .append("Duration: ").append(activity.getDuration()).append(" minutes").append(separator)
+                .append("Calories Burned: ").append(activity.getCaloriesBurned()).append(separator)
+                .append("Additional Metrics: ");
+        appendMetrics(prompt, activity.getAdditionalMetrics(), detail);
+        prompt.append('\n');
+    }
+
+    private void appendMetrics(StringBuilder prompt, ActivityMetrics metrics, Detail detail){
+        int start = prompt.length();
+        if(metrics != null){
+            appendScalar(prompt, start, "distance", metrics.getDistance(), " km");
+            appendScalar(prompt, start, "avg heart rate", metrics.getAvgHeartRate(), " bpm");
+            appendScalar(prompt, start, "max heart rate", metrics.getMaxHeartRate(), " bpm");
+            if(metrics.getAvgPace() != null){
+                separate(prompt, start).append("avg pace ");
+                appendPace(prompt, metrics.getAvgPace());
+            }
+            appendScalar(prompt, start, "elevation gain", metrics.getElevationGain(), " m");
+            if(detail != Detail.SCALARS){
+                appendSeries(prompt, start, "heart rate", toDoubles(metrics.getHeartRateSamples()), detail);
+                appendSeries(prompt, start, "pace s/km", metrics.getPaceSamples(), detail);
+                appendSeries(prompt, start, "elevation m", metrics.getElevationSamples(), detail);
+            }
+        }
+        if(prompt.length() == start) prompt.append("none");
+    }
+
+    private void appendScalar(StringBuilder prompt, int start, String name, Number value, String unit){
+        if(value == null) return;
+        separate(prompt, start).append(name).append(' ');
+        appendRounded(prompt, value.doubleValue());
+        prompt.append(unit);
+    }
+
+    private void appendSeries(StringBuilder prompt, int start, String name, double[] samples, Detail detail){
+        if(samples == null || samples.length == 0) return;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0;
+        for (double sample : samples) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+            sum += sample;
+        }
+        separate(prompt, start).append(name).append(" samples n=").append(samples.length).append(" min ");
+        appendRounded(prompt, min);
+        prompt.append(" avg ");
+        appendRounded(prompt, sum / samples.length);
+        prompt.append(" max ");
+        appendRounded(prompt, max);
+
+        if(detail == Detail.FULL && samples.length > 1){
+            // Bucket means keep the shape of the series at a fixed number of points
+            int points = Math.min(seriesPoints, samples.length);
+            prompt.append(" trend [");
+            for (int bucket = 0; bucket < points; bucket++) {
+                int from = (int) ((long) bucket * samples.length / points);
+                int to = (int) ((long) (bucket + 1) * samples.length / points);
+                double bucketSum = 0;
+                for (int i = from; i < to; i++) bucketSum += samples[i];
+                if(bucket > 0) prompt.append(", ");
+                appendRounded(prompt, bucketSum / (to - from));
+            }
+            prompt.append(']');
+        }
+    }
+
+    // Metrics after the first one, which starts at the given offset, get a separator
+    private StringBuilder separate(StringBuilder prompt, int start){
+        return prompt.length() > start ? prompt.append(", ") : prompt;
+    }
+
+    private void appendPace(StringBuilder prompt, double secondsPerKm){
+        long seconds = Math.round(secondsPerKm);
+        prompt.append(seconds / 60).append(':');
+        if(seconds % 60 < 10) prompt.append('0');
+        prompt.append(seconds % 60).append(" min/km");
+    }
+
+    private void appendRounded(StringBuilder prompt, double value){
+        long tenths = Math.round(value * 10);
+        if(tenths % 10 == 0) prompt.append(tenths / 10);
+        else prompt.append(tenths / 10.0);
+    }
+
+    private double[] toDoubles(int[] samples){
+        if(samples == null) return null;
+        double[] values = new double[samples.length];
+        for (int i = 0; i < samples.length; i++) values[i] = samples[i];
+        return values;
+    }
+
+    private boolean fits(StringBuilder prompt, Detail detail){
+        if(estimateTokens(prompt) <= maxTokens) return true;
+        if(detail == Detail.SCALARS){
+            log.warn("Prompt of ~{} tokens exceeds the budget of {} even without sample detail", estimateTokens(prompt), maxTokens);
+            return true;
+        }
+        meterRegistry.counter("ai.prompt.detail.reduced", "from", detail.name()).increment();
+        return false;
+    }
+
+    private String finish(StringBuilder prompt, DistributionSummary chars, DistributionSummary tokens){
+        chars.record(prompt.length());
+        tokens.record(estimateTokens(prompt));
+        return prompt.toString();
+    }
+
+    private static int estimateTokens(CharSequence prompt){
+        return (prompt.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private StringBuilder borrow(){
+        StringBuilder buffer = buffers.poll();
+        return buffer != null ? buffer : new StringBuilder(4096);
+    }
+
+    private void release(StringBuilder buffer){
+        // Oversized buffers are left to the GC rather than pinned in the pool
+        if(buffer.capacity() <= MAX_POOLED_CAPACITY){
+            buffer.setLength(0);
+            buffers.offer(buffer);
+        }
+    }
+}
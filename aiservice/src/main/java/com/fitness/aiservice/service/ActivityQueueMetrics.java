@@ -0,0 +1,79 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.RabbitMQConfig;
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue depth of every pipeline queue, polled from the broker into gauges (ai.queue.depth), and the
+ * age of consumed messages per lane (ai.queue.message.age), measured from their publish timestamp.
+ */
+@Slf4j
+@Component
+public class ActivityQueueMetrics {
+
+    private final AmqpAdmin amqpAdmin;
+    private final MeterRegistry meterRegistry;
+    private final List<String> queues = new ArrayList<>();
+    private final Map<String, AtomicLong> depths = new ConcurrentHashMap<>();
+    private final Map<String, Timer> ageTimers = new ConcurrentHashMap<>();
+
+    public ActivityQueueMetrics(AmqpAdmin amqpAdmin,
+                                MeterRegistry meterRegistry,
+                                @Value("${rabbitmq.queue.name}") String queueName,
+                                @Value("${rabbitmq.queue.backfill-name:activity.backfill.queue}") String backfillQueueName,
+                                @Value("${ai.retry.delays-ms:5000,30000,300000}") long[] retryDelaysMs,
+                                @Value("${ai.retry.parking-lot:activity.parking-lot}") String parkingLotQueue){
+        this.amqpAdmin = amqpAdmin;
+        this.meterRegistry = meterRegistry;
+        queues.add(queueName);
+        queues.add(backfillQueueName);
+        for (long delayMs : retryDelaysMs) queues.add(RabbitMQConfig.freshRetryQueueName(delayMs));
+        for (long delayMs : retryDelaysMs) queues.add(RabbitMQConfig.retryQueueName(delayMs));
+        queues.add(parkingLotQueue);
+        for (String queue : queues) {
+            AtomicLong depth = new AtomicLong();
+            depths.put(queue, depth);
+            meterRegistry.gauge("ai.queue.depth", List.of(Tag.of("queue", queue)), depth);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ai.queue-metrics.poll-interval-ms:10000}")
+    public void pollDepths(){
+        for (String queue : queues) {
+            try {
+                QueueInformation info = amqpAdmin.getQueueInfo(queue);
+                if(info != null) depths.get(queue).set(info.getMessageCount());
+            }catch (Exception e){
+                log.debug("Could not read depth of {}: {}", queue, e.getMessage());
+            }
+        }
+    }
+
+    public void recordAge(String lane, List<Message<Activity>> messages){
+        Timer timer = ageTimers.computeIfAbsent(lane, key -> meterRegistry.timer("ai.queue.message.age", "lane", key));
+        long now = System.currentTimeMillis();
+        for (Message<Activity> message : messages) {
+            Date timestamp = message.getHeaders().get(AmqpHeaders.TIMESTAMP, Date.class);
+            if(timestamp != null) timer.record(Math.max(0, now - timestamp.getTime()), TimeUnit.MILLISECONDS);
+        }
+    }
+}
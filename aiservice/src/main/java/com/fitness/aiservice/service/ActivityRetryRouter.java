@@ -0,0 +1,128 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.RabbitMQConfig;
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Sends failed activities to the next retry tier, or to the parking lot once all tiers are used up.
+ * The messages are re-published rather than rejected, so the failed delivery can be acked right away
+ * and the consumer moves on to other work while the retry waits out its TTL. Publishes are mandatory and
+ * confirmed before returning; if the broker does not take every message the exception propagates, the
+ * delivery is not acked and the activities come back instead of being lost.
+ */
+@Slf4j
+@Service
+public class ActivityRetryRouter {
+
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    @Value("${ai.retry.exchange:fitness.retry.exchange}")
+    private String retryExchange;
+    @Value("${ai.retry.delays-ms:5000,30000,300000}")
+    private long[] retryDelaysMs;
+    @Value("${ai.retry.parking-lot:activity.parking-lot}")
+    private String parkingLotQueue;
+    @Value("${ai.retry.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+    @Value("${rabbitmq.routing.backfill-key:activity.backfill}")
+    private String backfillRoutingKey;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+    // Message ids the broker handed back as unroutable; a return always arrives before its confirm
+    private final Set<String> returned = ConcurrentHashMap.newKeySet();
+
+    public ActivityRetryRouter(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry){
+        this.rabbitTemplate = rabbitTemplate;
+        this.meterRegistry = meterRegistry;
+        rabbitTemplate.setMandatory(true);
+        rabbitTemplate.setReturnsCallback(message -> {
+            String messageId = message.getMessage().getMessageProperties().getMessageId();
+            if(messageId != null) returned.add(messageId);
+        });
+    }
+
+    /**
+     * Routes the failed messages of one lane. Fresh activities return to the fresh queue after their
+     * delay, so they do not wait behind bulk imports on the backfill lane.
+     */
+    public void routeFailed(List<Message<Activity>> messages, boolean fresh){
+        publishConfirmed(messages, fresh, true, message -> {
+            int retries = retryCount(message);
+            if(retries >= retryDelaysMs.length){
+                log.error("Parking activity {} after {} retries", message.getPayload().getId(), retries);
+                return parkingLotQueue;
+            }
+            return fresh ? RabbitMQConfig.freshRetryQueueName(retryDelaysMs[retries]) : RabbitMQConfig.retryQueueName(retryDelaysMs[retries]);
+        });
+    }
+
+    /**
+     * Puts back activities another consumer holds a claim on. That consumer may have crashed, so the
+     * delivery is not a duplicate; it waits out the first retry tier without using up a retry, by which
+     * time the claim is either finished or, for a dead consumer, on its way to expiring.
+     */
+    public void defer(List<Message<Activity>> messages, boolean fresh){
+        publishConfirmed(messages, fresh, false, message -> {
+            if(retryDelaysMs.length == 0) return null;
+            return fresh ? RabbitMQConfig.freshRetryQueueName(retryDelaysMs[0]) : RabbitMQConfig.retryQueueName(retryDelaysMs[0]);
+        });
+    }
+
+    // A null target sends the message straight back to its lane, for deployments without retry tiers
+    private void publishConfirmed(List<Message<Activity>> messages, boolean fresh, boolean countRetry,
+                                  Function<Message<Activity>, String> target){
+        List<String> messageIds = rabbitTemplate.invoke(operations -> {
+            List<String> ids = messages.stream()
+                    .map(message -> send(operations, message, target.apply(message), fresh, countRetry))
+                    .toList();
+            operations.waitForConfirmsOrDie(confirmTimeoutMs);
+            return ids;
+        });
+        List<String> unroutable = messageIds.stream().filter(returned::remove).toList();
+        if(!unroutable.isEmpty()){
+            throw new AmqpException("Retry publishes could not be routed: " + unroutable);
+        }
+    }
+
+    private String send(RabbitTemplate operations, Message<Activity> message, String target, boolean fresh, boolean countRetry){
+        int retries = retryCount(message) + (countRetry ? 1 : 0);
+        Date timestamp = message.getHeaders().get(AmqpHeaders.TIMESTAMP, Date.class);
+        String messageId = UUID.randomUUID().toString();
+        String targetExchange = target != null ? retryExchange : exchange;
+        String targetRoutingKey = target != null ? target : fresh ? routingKey : backfillRoutingKey;
+        operations.convertAndSend(targetExchange, targetRoutingKey, message.getPayload(), amqpMessage -> {
+            amqpMessage.getMessageProperties().setMessageId(messageId);
+            amqpMessage.getMessageProperties().setHeader(RETRY_COUNT_HEADER, retries);
+            // Keeps the original publish time so queue age covers the whole wait, retries included
+            if(timestamp != null) amqpMessage.getMessageProperties().setTimestamp(timestamp);
+            return amqpMessage;
+        });
+        meterRegistry.counter(countRetry ? "ai.activity.retries" : "ai.activity.deferrals", "target", targetRoutingKey).increment();
+        return messageId;
+    }
+
+    private static int retryCount(Message<Activity> message){
+        Integer previous = message.getHeaders().get(RETRY_COUNT_HEADER, Integer.class);
+        return previous == null ? 0 : previous;
+    }
+}
@@ -0,0 +1,89 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token bucket in front of the LLM whose refill rate follows AIMD: it grows additively while calls
+ * succeed within the latency target and is cut multiplicatively on 429s or when the first chunk of an
+ * answer is slow to arrive.
+ */
+@Component
+public class AdaptiveRateLimiter {
+
+    private final double minRate;
+    private final double maxRate;
+    private final double additiveStep;
+    private final double decreaseFactor;
+    private final long latencyTargetMs;
+    private final double burst;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public AdaptiveRateLimiter(MeterRegistry meterRegistry,
+                               @Value("${gemini.rate-limit.initial-per-second:2}") double initialRate,
+                               @Value("${gemini.rate-limit.min-per-second:0.2}") double minRate,
+                               @Value("${gemini.rate-limit.max-per-second:10}") double maxRate,
+                               @Value("${gemini.rate-limit.additive-step:0.1}") double additiveStep,
+                               @Value("${gemini.rate-limit.decrease-factor:0.5}") double decreaseFactor,
+                               @Value("${gemini.rate-limit.latency-target-ms:8000}") long latencyTargetMs,
+                               @Value("${gemini.rate-limit.burst:2}") double burst){
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.additiveStep = additiveStep;
+        this.decreaseFactor = decreaseFactor;
+        this.latencyTargetMs = latencyTargetMs;
+        this.burst = burst;
+        this.rate = initialRate;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        meterRegistry.gauge("ai.llm.rate.limit", this, AdaptiveRateLimiter::currentRate);
+    }
+
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if(tokens >= 1){
+                    tokens -= 1;
+                    return;
+                }
+                waitNanos = (long) ((1 - tokens) / rate * 1_000_000_000L);
+            }
+            Thread.sleep(Math.max(1, waitNanos / 1_000_000));
+        }
+    }
+
+    public synchronized void onSuccess(long latencyMs){
+        refill();
+        if(latencyMs > latencyTargetMs){
+            decrease();
+        }else{
+            rate = Math.min(maxRate, rate + additiveStep);
+        }
+    }
+
+    public synchronized void onThrottled(){
+        refill();
+        decrease();
+    }
+
+    public synchronized double currentRate(){
+        return rate;
+    }
+
+    private void decrease(){
+        rate = Math.max(minRate, rate * decreaseFactor);
+        tokens = Math.min(tokens, 0);
+    }
+
+    private void refill(){
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * rate);
+        lastRefillNanos = now;
+    }
+}
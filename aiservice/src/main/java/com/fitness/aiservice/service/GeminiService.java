@@ -1,43 +1,190 @@
 package com.fitness.aiservice.service;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+@Slf4j
 @Service
 public class GeminiService {
 
-    @Value("${gemini.api.url}")
-    private String geminiApiUrl;
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE = new ParameterizedTypeReference<>() {};
+
+    // Server-sent events variant of the generate endpoint, e.g. ...:streamGenerateContent?alt=sse&key=
+    @Value("${gemini.api.stream-url}")
+    private String geminiStreamApiUrl;
 
     @Value("${gemini.api.key}")
     private String geminiApiKey;
 
+    // Applies to the first chunk and to each gap between chunks
+    @Value("${gemini.timeout:30s}")
+    private Duration timeout;
+    // Deadline for a whole streamed answer, so a stream that keeps trickling chunks still ends
+    @Value("${gemini.total-timeout:2m}")
+    private Duration totalTimeout;
+    @Value("${gemini.retry.max-attempts:3}")
+    private int maxAttempts;
+    @Value("${gemini.retry.base-backoff:500ms}")
+    private Duration baseBackoff;
+    @Value("${gemini.retry.max-backoff:10s}")
+    private Duration maxBackoff;
+
     private final WebClient webClient;
+    // Caps concurrent LLM calls across all consumers to what the quota allows
+    private final Semaphore inFlight;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final LlmCircuitBreaker circuitBreaker;
+    private final ObjectMapper objectMapper;
 
-    public GeminiService(WebClient.Builder webClientBuilder){
+    public GeminiService(WebClient.Builder webClientBuilder,
+                         AdaptiveRateLimiter rateLimiter,
+                         LlmCircuitBreaker circuitBreaker,
+                         ObjectMapper objectMapper,
+                         @Value("${gemini.max-in-flight:8}") int maxInFlight){
         this.webClient = webClientBuilder.build();
+        this.objectMapper = objectMapper;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.inFlight = new Semaphore(maxInFlight, true);
     }
 
     public String getAnswer(String question){
+        return getAnswer(question, text -> {}, () -> {});
+    }
+
+    /**
+     * Streams the answer, handing each piece of generated text to {@code onText} as it arrives. A retry
+     * starts the answer over, so {@code onRestart} is called first and the text handed over so far should
+     * be discarded. The assembled answer is returned in the same shape as a non-streaming generate response.
+     */
+    public String getAnswer(String question, Consumer<String> onText, Runnable onRestart){
         Map<String, Object> requestBody = Map.of("contents", new Object[]{
                 Map.of("parts", new Object[]{
                         Map.of("text", question)
             })
         });
-        String response = webClient.post()
-                .uri(geminiApiUrl + geminiApiKey)
-                .header("Content-Type", "application/json")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
 
+        LlmCircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if(permit == LlmCircuitBreaker.Permit.DENIED){
+            throw new LlmUnavailableException("LLM circuit breaker is open");
+        }
+        try {
+            try {
+                inFlight.acquire();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new LlmUnavailableException("Interrupted while waiting for an LLM slot", e);
+            }
+            try {
+                return toGenerateResponse(callWithRetry(requestBody, onText, onRestart));
+            }finally {
+                inFlight.release();
+            }
+        }finally {
+            // A call that ends without an outcome, e.g. interrupted or rejected, must not hold on to the half-open trial
+            circuitBreaker.release(permit);
+        }
+    }
+
+    private String callWithRetry(Map<String, Object> requestBody, Consumer<String> onText, Runnable onRestart){
+        RuntimeException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                if(attempt > 1) onRestart.run();
+                rateLimiter.acquire();
+                long start = System.nanoTime();
+                AtomicLong firstChunkNanos = new AtomicLong();
+                String text = webClient.post()
+                        .uri(geminiStreamApiUrl + geminiApiKey)
+                        .header("Content-Type", "application/json")
+                        .bodyValue(requestBody)
+                        .retrieve()
+                        .bodyToFlux(SSE_TYPE)
+                        .timeout(timeout)
+                        .doOnNext(event -> firstChunkNanos.compareAndSet(0, System.nanoTime()))
+                        .mapNotNull(event -> chunkText(event.data()))
+                        .doOnNext(onText)
+                        .reduce(new StringBuilder(), StringBuilder::append)
+                        .map(StringBuilder::toString)
+                        .timeout(totalTimeout)
+                        .block();
+                // Time to first chunk reflects how loaded the LLM is; the total grows with the answer's length
+                long firstChunk = firstChunkNanos.get() == 0 ? System.nanoTime() : firstChunkNanos.get();
+                rateLimiter.onSuccess((firstChunk - start) / 1_000_000);
+                circuitBreaker.onSuccess();
+                return text;
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new LlmUnavailableException("Interrupted while waiting for the LLM rate limiter", e);
+            }catch (WebClientResponseException e){
+                if(e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS){
+                    rateLimiter.onThrottled();
+                }else if(!e.getStatusCode().is5xxServerError()){
+                    // Client errors will not get better on retry and say nothing about the LLM's health,
+                    // so the breaker is left alone and the caller routes the activity to its retry tiers
+                    throw new LlmRequestRejectedException("LLM rejected the request with " + e.getStatusCode(), e);
+                }
+                lastError = e;
+            }catch (LlmResponseMalformedException e){
+                // A garbled answer is not an outage; the caller retries the activity later without tripping the breaker
+                throw e;
+            }catch (RuntimeException e){
+                // Timeouts, dropped streams and connection failures
+                lastError = e;
+            }
+            log.warn("LLM call failed (attempt {}/{}): {}", attempt, maxAttempts, lastError.getMessage());
+            if(attempt < maxAttempts) sleepWithJitter(attempt);
+        }
+        circuitBreaker.onFailure();
+        throw new LlmUnavailableException("LLM call failed after " + maxAttempts + " attempts", lastError);
+    }
+
+    private String chunkText(String data){
+        if(data == null || data.isBlank()) return null;
+        try {
+            JsonNode parts = objectMapper.readTree(data).path("candidates").path(0).path("content").path("parts");
+            StringBuilder text = new StringBuilder();
+            parts.forEach(part -> text.append(part.path("text").asText()));
+            return text.isEmpty() ? null : text.toString();
+        }catch (Exception e){
+            throw new LlmResponseMalformedException("Malformed LLM stream chunk", e);
+        }
+    }
+
+    private String toGenerateResponse(String text){
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putArray("candidates").addObject()
+                .putObject("content")
+                .putArray("parts").addObject()
+                .put("text", text);
+        return response.toString();
+    }
 
-        return response;
+    // Full jitter exponential backoff, so retrying consumers do not hit the API in lockstep
+    private void sleepWithJitter(int attempt){
+        long cap = Math.min(maxBackoff.toMillis(), baseBackoff.toMillis() << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("Interrupted while backing off", e);
+        }
     }
 
 }
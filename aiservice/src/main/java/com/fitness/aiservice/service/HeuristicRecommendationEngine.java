@@ -0,0 +1,254 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityMetrics;
+import com.fitness.aiservice.model.Recommendation;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Rule-based analysis computed locally from the activity type, duration, calories, heart-rate and pace
+ * metrics and the user's recent sessions. It is saved as a provisional recommendation the moment an
+ * activity arrives and stands in for the LLM analysis until that replaces it, or when the LLM is down.
+ */
+@Service
+public class HeuristicRecommendationEngine {
+
+    private static final int DEFAULT_MAX_HEART_RATE = 190;
+
+    private record Session(String activityId, String type, LocalDateTime startTime) {}
+
+    private final Cache<String, Deque<Session>> recentSessions;
+    private final int historySize;
+
+    // Recent sessions are remembered per instance from the activities it consumes
+    public HeuristicRecommendationEngine(@Value("${ai.heuristics.history-size:20}") int historySize,
+                                         @Value("${ai.heuristics.max-users:50000}") long maxUsers,
+                                         @Value("${ai.heuristics.history-ttl:14d}") Duration historyTtl){
+        this.historySize = historySize;
+        this.recentSessions = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(historyTtl)
+                .build();
+    }
+
+    public Recommendation recommend(Activity activity){
+        String type = activity.getType() == null ? "OTHER" : activity.getType();
+        int duration = activity.getDuration() == null ? 0 : activity.getDuration();
+        int calories = activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned();
+        ActivityMetrics metrics = activity.getAdditionalMetrics() == null ? new ActivityMetrics() : activity.getAdditionalMetrics();
+        LocalDateTime startTime = activity.getStartTime() != null ? activity.getStartTime() : LocalDateTime.now();
+        List<Session> history = recordSession(activity.getUserId(), new Session(activity.getId(), type, startTime));
+
+        List<String> improvements = new ArrayList<>();
+        List<String> suggestions = new ArrayList<>();
+        List<String> safety = new ArrayList<>();
+        StringBuilder analysis = new StringBuilder();
+
+        // Overall: duration and training load over the last week
+        int sessionsThisWeek = 0;
+        int sameTypeThisWeek = 0;
+        for (Session session : history) {
+            if(ChronoUnit.DAYS.between(session.startTime(), startTime) < 7){
+                sessionsThisWeek++;
+                if(session.type().equals(type)) sameTypeThisWeek++;
+            }
+        }
+        int consecutiveDays = consecutiveDays(history, startTime.toLocalDate());
+        analysis.append("Overall:").append(durationVerdict(duration)).append(' ')
+                .append(type.toLowerCase().replace('_', ' ')).append(" session of ").append(duration)
+                .append(" minutes, your ").append(ordinal(sessionsThisWeek)).append(" workout in the last 7 days.");
+        if(consecutiveDays >= 4){
+            analysis.append(" You have trained ").append(consecutiveDays).append(" days in a row.");
+            improvements.add("Recovery : Plan a rest or mobility day; " + consecutiveDays + " consecutive training days raise the risk of overuse injuries");
+        }else if(sessionsThisWeek <= 1){
+            improvements.add("Consistency : Aim for at least three sessions a week to build a steady training base");
+        }
+        if(sameTypeThisWeek >= 4){
+            improvements.add("Variety : Mix in a different activity; most of this week's sessions were " + type.toLowerCase().replace('_', ' '));
+        }
+        if(duration < 20){
+            improvements.add("Duration : Extend sessions towards 30 minutes to get a meaningful aerobic stimulus");
+        }
+        analysis.append("\n\n");
+
+        // Pace: steadiness from the split between the first and second half of the samples
+        analysis.append("Pace:");
+        double[] pace = metrics.getPaceSamples();
+        if(metrics.getAvgPace() != null){
+            analysis.append("Average pace ").append(formatPace(metrics.getAvgPace())).append(". ");
+        }
+        if(pace != null && pace.length >= 4){
+            double drift = mean(pace, pace.length / 2, pace.length) - mean(pace, 0, pace.length / 2);
+            if(drift > 15){
+                analysis.append("You slowed by about ").append(Math.round(drift)).append(" s/km in the second half.");
+                improvements.add("Pacing : Start slightly slower to hold your pace through the second half");
+            }else if(drift < -15){
+                analysis.append("You finished about ").append(Math.round(-drift)).append(" s/km faster than you started, a well controlled negative split.");
+            }else{
+                analysis.append("Your pace was steady throughout.");
+            }
+        }else if(metrics.getAvgPace() == null){
+            analysis.append("No pace data recorded.");
+        }
+        analysis.append("\n\n");
+
+        // Heart rate: intensity zone relative to the recorded or estimated maximum
+        analysis.append("Heart Rate:");
+        Integer avgHeartRate = metrics.getAvgHeartRate();
+        if(avgHeartRate == null && metrics.getHeartRateSamples() != null && metrics.getHeartRateSamples().length > 0){
+            long sum = 0;
+            for (int sample : metrics.getHeartRateSamples()) sum += sample;
+            avgHeartRate = (int) (sum / metrics.getHeartRateSamples().length);
+        }
+        int maxHeartRate = metrics.getMaxHeartRate() != null && metrics.getMaxHeartRate() > DEFAULT_MAX_HEART_RATE
+                ? metrics.getMaxHeartRate() : DEFAULT_MAX_HEART_RATE;
+        if(avgHeartRate != null && avgHeartRate > 0){
+            double intensity = (double) avgHeartRate / maxHeartRate;
+            analysis.append("Average heart rate ").append(avgHeartRate).append(" bpm, about ")
+                    .append(Math.round(intensity * 100)).append("% of max, ").append(zone(intensity)).append('.');
+            if(intensity >= 0.85){
+                improvements.add("Intensity : Keep most sessions easier; time near your maximum heart rate needs longer recovery");
+                safety.add("Cool down for 5-10 minutes after high-intensity efforts");
+            }else if(intensity < 0.6 && duration >= 20){
+                suggestions.add("Tempo session : Include 2-3 blocks of 8 minutes at a comfortably hard effort to raise your fitness");
+            }
+        }else{
+            analysis.append("No heart-rate data recorded.");
+        }
+        analysis.append("\n\n");
+
+        // Calories: burn rate against what the activity type typically burns per minute
+        analysis.append("Calories Burned:");
+        if(duration > 0 && calories > 0){
+            double perMinute = (double) calories / duration;
+            double[] expected = expectedCaloriesPerMinute(type);
+            analysis.append(calories).append(" kcal, ").append(Math.round(perMinute * 10) / 10.0).append(" kcal per minute, ");
+            if(perMinute < expected[0]) analysis.append("on the light side for this activity.");
+            else if(perMinute > expected[1]) analysis.append("a very high burn rate for this activity.");
+            else analysis.append("in the typical range for this activity.");
+        }else{
+            analysis.append("Not enough data to assess the calorie burn.");
+        }
+
+        suggestions.add(nextWorkout(type, consecutiveDays, duration));
+        safety.add("Stay hydrated before, during and after exercise");
+        safety.add("Stop and rest if you feel pain, dizziness or unusual breathlessness");
+        if(improvements.isEmpty()){
+            improvements.add("Progression : Increase duration or intensity by about 10% next week");
+        }
+
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .recommendation(analysis.toString())
+                .improvement(improvements)
+                .suggestion(suggestions)
+                .safety(safety)
+                .provisional(true)
+                .build();
+    }
+
+    private List<Session> recordSession(String userId, Session session){
+        if(userId == null) return List.of(session);
+        Deque<Session> sessions = recentSessions.get(userId, key -> new ArrayDeque<>(historySize));
+        synchronized (sessions) {
+            // A redelivered or re-analyzed activity is only counted once
+            if(session.activityId() == null || sessions.stream().noneMatch(seen -> session.activityId().equals(seen.activityId()))){
+                sessions.addFirst(session);
+            }
+            while (sessions.size() > historySize) sessions.removeLast();
+            return new ArrayList<>(sessions);
+        }
+    }
+
+    private int consecutiveDays(List<Session> history, LocalDate today){
+        int days = 0;
+        LocalDate day = today;
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (Session session : history) {
+                if(session.startTime().toLocalDate().equals(day)){
+                    found = true;
+                    days++;
+                    day = day.minusDays(1);
+                    break;
+                }
+            }
+        }
+        return days;
+    }
+
+    private String nextWorkout(String type, int consecutiveDays, int duration){
+        if(consecutiveDays >= 4) return "Active recovery : 20-30 minutes of easy walking or stretching tomorrow";
+        return switch (type) {
+            case "RUNNING" -> "Easy run : " + Math.max(30, duration) + " minutes at a conversational pace to build aerobic base";
+            case "CYCLING" -> "Cadence ride : 45 minutes with 5 x 3 minutes at a high cadence and easy spinning between";
+            case "SWIMMING" -> "Technique swim : 10 x 50 m focusing on stroke length with 20 seconds rest";
+            case "WALKING" -> "Brisk walk : 40 minutes including a few short hills";
+            case "WEIGHT_TRAINING" -> "Mobility and core : 30 minutes of core work and stretching before the next strength day";
+            case "YOGA", "STRETCHING" -> "Light cardio : 30 minutes of easy cycling or walking to complement flexibility work";
+            default -> "Balanced session : 30-40 minutes of moderate cardio followed by 10 minutes of stretching";
+        };
+    }
+
+    // Rough kcal per minute range for an average adult
+    private double[] expectedCaloriesPerMinute(String type){
+        return switch (type) {
+            case "RUNNING" -> new double[]{8, 16};
+            case "CYCLING", "SWIMMING", "CARDIO" -> new double[]{6, 14};
+            case "WALKING", "WEIGHT_TRAINING" -> new double[]{3, 8};
+            case "YOGA", "STRETCHING" -> new double[]{2, 5};
+            default -> new double[]{3, 12};
+        };
+    }
+
+    private static String durationVerdict(int minutes){
+        if(minutes < 20) return "A short";
+        if(minutes <= 60) return "A solid";
+        if(minutes <= 90) return "A long";
+        return "A very long";
+    }
+
+    private static String zone(double intensity){
+        if(intensity < 0.6) return "an easy recovery effort";
+        if(intensity < 0.7) return "an aerobic endurance effort";
+        if(intensity < 0.8) return "a moderate tempo effort";
+        if(intensity < 0.9) return "a hard threshold effort";
+        return "a near-maximal effort";
+    }
+
+    private static String ordinal(int n){
+        if(n % 100 >= 11 && n % 100 <= 13) return n + "th";
+        return switch (n % 10) {
+            case 1 -> n + "st";
+            case 2 -> n + "nd";
+            case 3 -> n + "rd";
+            default -> n + "th";
+        };
+    }
+
+    private static String formatPace(double secondsPerKm){
+        long seconds = Math.round(secondsPerKm);
+        return seconds / 60 + ":" + (seconds % 60 < 10 ? "0" : "") + seconds % 60 + " min/km";
+    }
+
+    private static double mean(double[] values, int from, int to){
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += values[i];
+        return sum / (to - from);
+    }
+}
@@ -0,0 +1,41 @@
+package com.fitness.aiservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops the activity consumers while the LLM circuit is open, so queued activities wait in RabbitMQ
+ * instead of being pulled and failed one after another, and starts them again for the trial call.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ListenerCircuitControl {
+
+    public static final String ACTIVITY_LISTENER_ID = "activityListener";
+    public static final String BACKFILL_LISTENER_ID = "backfillListener";
+
+    private final LlmCircuitBreaker circuitBreaker;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Scheduled(fixedDelayString = "${gemini.circuit-breaker.check-interval-ms:1000}")
+    public void syncConsumers(){
+        boolean open = circuitBreaker.getState() == LlmCircuitBreaker.State.OPEN && !circuitBreaker.isReadyForTrial();
+        for (String listenerId : new String[]{ACTIVITY_LISTENER_ID, BACKFILL_LISTENER_ID}) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(listenerId);
+            if(container == null) continue;
+
+            if(open && container.isRunning()){
+                log.warn("Pausing {} consumers while the LLM circuit is open", listenerId);
+                container.stop();
+            }else if(!open && !container.isRunning()){
+                log.info("Resuming {} consumers", listenerId);
+                container.start();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Opens after a run of consecutive LLM failures. While open, calls fail fast; once the cool-down has
+ * passed a single trial call is let through (half-open) and its outcome closes or re-opens the breaker.
+ */
+@Slf4j
+@Component
+public class LlmCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // What tryAcquire granted; only the caller holding TRIAL may give the half-open trial back
+    public enum Permit { DENIED, GRANTED, TRIAL }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public LlmCircuitBreaker(MeterRegistry meterRegistry,
+                             @Value("${gemini.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                             @Value("${gemini.circuit-breaker.open-duration:30s}") Duration openDuration){
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        meterRegistry.gauge("ai.llm.circuit.open", this, breaker -> breaker.getState() == State.CLOSED ? 0 : 1);
+    }
+
+    public synchronized Permit tryAcquire(){
+        if(state == State.OPEN && System.nanoTime() - openedAt >= openNanos){
+            state = State.HALF_OPEN;
+            log.info("LLM circuit breaker half-open, letting a trial call through");
+        }
+        if(state == State.CLOSED) return Permit.GRANTED;
+        if(state == State.HALF_OPEN && !trialInFlight){
+            trialInFlight = true;
+            return Permit.TRIAL;
+        }
+        return Permit.DENIED;
+    }
+
+    public synchronized void onSuccess(){
+        if(state != State.CLOSED) log.info("LLM circuit breaker closed");
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure(){
+        trialInFlight = false;
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || consecutiveFailures >= failureThreshold){
+            if(state != State.OPEN) log.warn("LLM circuit breaker opened after {} consecutive failures", consecutiveFailures);
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    // Frees the half-open trial of a call that ended without a success or failure to record. Calls admitted
+    // while the breaker was closed pass GRANTED and leave a trial taken by someone else alone
+    public synchronized void release(Permit permit){
+        if(permit == Permit.TRIAL && state == State.HALF_OPEN) trialInFlight = false;
+    }
+
+    public synchronized State getState(){
+        return state;
+    }
+
+    // True once the cool-down is over, so paused consumers may resume and provide the trial call
+    public synchronized boolean isReadyForTrial(){
+        return state == State.HALF_OPEN || (state == State.OPEN && System.nanoTime() - openedAt >= openNanos);
+    }
+}
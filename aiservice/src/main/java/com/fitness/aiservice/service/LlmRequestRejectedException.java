@@ -0,0 +1,8 @@
+package com.fitness.aiservice.service;
+
+// The LLM refused the request itself (a 4xx other than 429), so retrying it right away cannot succeed
+public class LlmRequestRejectedException extends RuntimeException {
+    public LlmRequestRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
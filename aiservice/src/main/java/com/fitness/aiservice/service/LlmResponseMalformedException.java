@@ -0,0 +1,8 @@
+package com.fitness.aiservice.service;
+
+// The LLM answered, but with content that cannot be parsed; repeating the call right away is unlikely to help
+public class LlmResponseMalformedException extends RuntimeException {
+    public LlmResponseMalformedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,220 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.model.Recommendation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass extraction of analyses from Gemini responses. The envelope is walked with a streaming
+ * parser straight to {@code candidates[0].content.parts[0].text}, the code fence is cut off by index,
+ * and the analysis JSON is read token by token into {@link Recommendation} without building trees.
+ */
+@Component
+public class LlmResponseParser {
+
+    private static final String FENCE = "```";
+    private static final String[] ANALYSIS_KEYS = {"overall", "pace", "heartrate", "caloriesBurned"};
+    private static final String[] ANALYSIS_PREFIXES = {"Overall:", "Pace:", "Heart Rate:", "Calories Burned:"};
+
+    private final JsonFactory factory;
+
+    // Shares the application's ObjectMapper, whose factory carries its parser configuration
+    public LlmResponseParser(ObjectMapper objectMapper){
+        this.factory = objectMapper.getFactory();
+    }
+
+    // Activity fields are left for the caller to fill in
+    public Recommendation parseRecommendation(String response) throws IOException {
+        try (JsonParser parser = factory.createParser(extractText(response))) {
+            if(parser.nextToken() != JsonToken.START_OBJECT){
+                throw new IOException("Expected an analysis object");
+            }
+            Recommendation recommendation = readAnalysis(parser);
+            if(recommendation.getRecommendation() == null) recommendation.setRecommendation("");
+            return recommendation;
+        }
+    }
+
+    /**
+     * Reads a batched answer into recommendations keyed by their "activityId". Entries without an
+     * "analysis" object are left out so the caller can retry those activities on their own.
+     */
+    public Map<String, Recommendation> parseBatch(String response) throws IOException {
+        Map<String, Recommendation> recommendations = new HashMap<>();
+        try (JsonParser parser = factory.createParser(extractText(response))) {
+            if(parser.nextToken() != JsonToken.START_ARRAY) return recommendations;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Recommendation recommendation = readAnalysis(parser);
+                if(recommendation.getActivityId() != null && recommendation.getRecommendation() != null){
+                    recommendations.put(recommendation.getActivityId(), recommendation);
+                }
+            }
+        }
+        return recommendations;
+    }
+
+    // The answer text with its markdown code fence removed
+    public String extractText(String response) throws IOException {
+        String text = null;
+        try (JsonParser parser = factory.createParser(response)) {
+            if(parser.nextToken() == JsonToken.START_OBJECT
+                    && seekField(parser, "candidates") && enterFirstObject(parser)
+                    && seekField(parser, "content") && parser.currentToken() == JsonToken.START_OBJECT
+                    && seekField(parser, "parts") && enterFirstObject(parser)
+                    && seekField(parser, "text")){
+                text = parser.getValueAsString();
+            }
+        }
+        if(text == null) throw new IOException("No candidate text in LLM response");
+        return stripFence(text);
+    }
+
+    static String stripFence(String text){
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        if(text.startsWith(FENCE, start)){
+            int lineEnd = text.indexOf('\n', start);
+            start = lineEnd < 0 || lineEnd > end ? end : lineEnd + 1;
+        }
+        if(end - start >= FENCE.length() && text.startsWith(FENCE, end - FENCE.length())){
+            end -= FENCE.length();
+        }
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        return start == 0 && end == text.length() ? text : text.substring(start, end);
+    }
+
+    // Expects the parser on START_OBJECT and leaves it on the matching END_OBJECT
+    private Recommendation readAnalysis(JsonParser parser) throws IOException {
+        String activityId = null;
+        String[] analysis = null;
+        List<String> improvements = new ArrayList<>();
+        List<String> suggestions = new ArrayList<>();
+        List<String> safety = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "activityId" -> activityId = parser.getValueAsString();
+                case "analysis" -> {
+                    if(value == JsonToken.START_OBJECT){
+                        analysis = readAnalysisFields(parser);
+                    }else{
+                        parser.skipChildren();
+                        analysis = new String[ANALYSIS_KEYS.length];
+                    }
+                }
+                case "improvements" -> readPairs(parser, "areas", "recommendation", improvements);
+                case "suggestions" -> readPairs(parser, "workout", "description", suggestions);
+                case "safety" -> {
+                    if(value == JsonToken.START_ARRAY){
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            safety.add(scalarText(parser));
+                        }
+                    }else{
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        return Recommendation.builder()
+                .activityId(activityId)
+                .recommendation(analysis == null ? null : formatAnalysis(analysis))
+                .improvement(improvements.isEmpty() ? Collections.singletonList("No specific improvement provided") : improvements)
+                .suggestion(suggestions.isEmpty() ? Collections.singletonList("No Suggestion provided") : suggestions)
+                .safety(safety.isEmpty() ? Collections.singletonList("Follow general safety guidelines") : safety)
+                .build();
+    }
+
+    private String[] readAnalysisFields(JsonParser parser) throws IOException {
+        String[] values = new String[ANALYSIS_KEYS.length];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            int index = indexOf(field);
+            if(index >= 0) values[index] = scalarText(parser);
+            else parser.skipChildren();
+        }
+        return values;
+    }
+
+    private String formatAnalysis(String[] values){
+        StringBuilder fullAnalysis = new StringBuilder();
+        for (int i = 0; i < ANALYSIS_KEYS.length; i++) {
+            fullAnalysis.append(ANALYSIS_PREFIXES[i])
+                    .append(values[i] == null ? "" : values[i])
+                    .append("\n\n");
+        }
+        return fullAnalysis.toString().trim();
+    }
+
+    // Reads an array of {first, second} objects as "first : second" lines
+    private void readPairs(JsonParser parser, String firstKey, String secondKey, List<String> target) throws IOException {
+        if(parser.currentToken() != JsonToken.START_ARRAY){
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if(parser.currentToken() != JsonToken.START_OBJECT){
+                parser.skipChildren();
+                continue;
+            }
+            String first = "";
+            String second = "";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if(firstKey.equals(field)) first = scalarText(parser);
+                else if(secondKey.equals(field)) second = scalarText(parser);
+                else parser.skipChildren();
+            }
+            target.add(first + " : " + second);
+        }
+    }
+
+    // Matches JsonNode.asText(): scalars as text, containers and null as empty
+    private String scalarText(JsonParser parser) throws IOException {
+        if(parser.currentToken().isStructStart()){
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getValueAsString("");
+    }
+
+    // Expects the parser on START_OBJECT; on success leaves it on the field's value
+    private boolean seekField(JsonParser parser, String name) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean match = name.equals(parser.currentName());
+            parser.nextToken();
+            if(match) return true;
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private boolean enterFirstObject(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.START_ARRAY && parser.nextToken() == JsonToken.START_OBJECT;
+    }
+
+    private static int indexOf(String key){
+        for (int i = 0; i < ANALYSIS_KEYS.length; i++) {
+            if(ANALYSIS_KEYS[i].equals(key)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,11 @@
+package com.fitness.aiservice.service;
+
+public class LlmUnavailableException extends RuntimeException {
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+
+    public LlmUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,142 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityMetrics;
+import com.fitness.aiservice.model.CachedAnalysis;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.repository.CachedAnalysisRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-tier cache of LLM analyses keyed by a normalized activity fingerprint: type, bucketed duration
+ * and calories, and quantized key metrics. Near-identical activities reuse an earlier analysis
+ * instead of going back to Gemini.
+ */
+@Slf4j
+@Service
+public class RecommendationCacheService {
+
+    private final boolean enabled;
+    private final int durationBucket;
+    private final int caloriesBucket;
+    private final Cache<String, CachedAnalysis> memoryTier;
+    private final CachedAnalysisRepository persistentTier;
+
+    private final Counter memoryHits;
+    private final Counter persistentHits;
+    private final Counter misses;
+    private final Counter latencySavedMs;
+    private final Timer llmLatency;
+
+    public RecommendationCacheService(CachedAnalysisRepository persistentTier,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${ai.recommendation-cache.enabled:true}") boolean enabled,
+                                      @Value("${ai.recommendation-cache.max-size:10000}") long maxSize,
+                                      @Value("${ai.recommendation-cache.ttl:6h}") Duration ttl,
+                                      @Value("${ai.recommendation-cache.duration-bucket:5}") int durationBucket,
+                                      @Value("${ai.recommendation-cache.calories-bucket:50}") int caloriesBucket){
+        this.persistentTier = persistentTier;
+        this.enabled = enabled;
+        this.durationBucket = durationBucket;
+        this.caloriesBucket = caloriesBucket;
+        this.memoryTier = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memoryTier, "recommendationFingerprint");
+
+        this.memoryHits = meterRegistry.counter("ai.recommendation.cache.requests", "result", "hit", "tier", "memory");
+        this.persistentHits = meterRegistry.counter("ai.recommendation.cache.requests", "result", "hit", "tier", "mongo");
+        this.misses = meterRegistry.counter("ai.recommendation.cache.requests", "result", "miss", "tier", "none");
+        this.latencySavedMs = meterRegistry.counter("ai.recommendation.cache.latency.saved.ms");
+        this.llmLatency = meterRegistry.timer("ai.llm.latency");
+    }
+
+    public Optional<Recommendation> lookup(Activity activity){
+        if(!enabled) return Optional.empty();
+        String fingerprint = fingerprint(activity);
+
+        CachedAnalysis cached = memoryTier.getIfPresent(fingerprint);
+        if(cached != null){
+            memoryHits.increment();
+        }else{
+            cached = persistentTier.findById(fingerprint).orElse(null);
+            if(cached == null){
+                misses.increment();
+                return Optional.empty();
+            }
+            persistentHits.increment();
+            memoryTier.put(fingerprint, cached);
+        }
+        latencySavedMs.increment(llmLatency.mean(TimeUnit.MILLISECONDS));
+        return Optional.of(toRecommendation(activity, cached));
+    }
+
+    public void store(Activity activity, Recommendation recommendation){
+        if(!enabled) return;
+        CachedAnalysis analysis = CachedAnalysis.builder()
+                .fingerprint(fingerprint(activity))
+                .recommendation(recommendation.getRecommendation())
+                .improvement(recommendation.getImprovement())
+                .suggestion(recommendation.getSuggestion())
+                .safety(recommendation.getSafety())
+                .createdAt(LocalDateTime.now())
+                .build();
+        memoryTier.put(analysis.getFingerprint(), analysis);
+        try {
+            persistentTier.save(analysis);
+        }catch (Exception e){
+            log.warn("Failed to persist cached analysis {}: {}", analysis.getFingerprint(), e.getMessage());
+        }
+    }
+
+    public Timer llmLatency(){
+        return llmLatency;
+    }
+
+    String fingerprint(Activity activity){
+        StringBuilder key = new StringBuilder(64)
+                .append(activity.getType())
+                .append("|d").append(bucket(activity.getDuration(), durationBucket))
+                .append("|c").append(bucket(activity.getCaloriesBurned(), caloriesBucket));
+        ActivityMetrics metrics = activity.getAdditionalMetrics();
+        if(metrics != null){
+            if(metrics.getAvgHeartRate() != null) key.append("|hr").append(bucket(metrics.getAvgHeartRate(), 10));
+            if(metrics.getDistance() != null) key.append("|km").append(Math.round(metrics.getDistance() * 2) / 2.0);
+            if(metrics.getAvgPace() != null) key.append("|p").append(bucket((int) Math.round(metrics.getAvgPace()), 15));
+            if(metrics.getElevationGain() != null) key.append("|e").append(bucket((int) Math.round(metrics.getElevationGain()), 50));
+        }
+        return key.toString();
+    }
+
+    private static int bucket(Integer value, int size){
+        if(value == null) return -1;
+        return Math.round((float) value / size) * size;
+    }
+
+    private static Recommendation toRecommendation(Activity activity, CachedAnalysis cached){
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .recommendation(cached.getRecommendation())
+                .improvement(cached.getImprovement())
+                .suggestion(cached.getSuggestion())
+                .safety(cached.getSafety())
+                .build();
+    }
+}
@@ -0,0 +1,123 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityClaim;
+import com.fitness.aiservice.model.Recommendation;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps redelivered activities from being analyzed twice. A delivery is checked against an in-memory
+ * set of finished activities first, then against the recommendations collection, whose unique activityId
+ * index is the source of truth, and finally has to win a claim so that concurrent consumers of the same
+ * activity do not both call the LLM.
+ */
+@Slf4j
+@Service
+public class RecommendationIdempotencyGuard {
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, Boolean> completed;
+    private final String owner = UUID.randomUUID().toString();
+
+    private final Counter memoryDuplicates;
+    private final Counter storeDuplicates;
+
+    public RecommendationIdempotencyGuard(MongoTemplate mongoTemplate,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${ai.idempotency.max-size:100000}") long maxSize,
+                                          @Value("${ai.idempotency.ttl:24h}") Duration ttl){
+        this.mongoTemplate = mongoTemplate;
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.memoryDuplicates = meterRegistry.counter("ai.activity.duplicates", "source", "memory");
+        this.storeDuplicates = meterRegistry.counter("ai.activity.duplicates", "source", "store");
+    }
+
+    /**
+     * Activities this consumer now owns, and activities another consumer holds a claim on. A claim held
+     * elsewhere may belong to a consumer that crashed before finishing, so those deliveries must be put back
+     * rather than acked. Everything else in the batch is finished and can be acked without further work.
+     */
+    public record ClaimResult(Set<String> owned, Set<String> claimedElsewhere) {}
+
+    public ClaimResult claim(List<Activity> activities){
+        Set<String> candidates = new LinkedHashSet<>();
+        for (Activity activity : activities) {
+            if(completed.getIfPresent(activity.getId()) != null){
+                memoryDuplicates.increment();
+            }else{
+                candidates.add(activity.getId());
+            }
+        }
+        if(candidates.isEmpty()) return new ClaimResult(candidates, Set.of());
+
+        // Provisional rule-based recommendations do not count; the activity still needs its LLM analysis
+        Query existing = new Query(Criteria.where("activityId").in(candidates).and("provisional").ne(true));
+        existing.fields().include("activityId");
+        for (Recommendation recommendation : mongoTemplate.find(existing, Recommendation.class)) {
+            if(candidates.remove(recommendation.getActivityId())){
+                completed.put(recommendation.getActivityId(), Boolean.TRUE);
+                storeDuplicates.increment();
+            }
+        }
+        if(candidates.isEmpty()) return new ClaimResult(candidates, Set.of());
+
+        List<String> ordered = new ArrayList<>(candidates);
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> taken = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityClaim.class)
+                    .insert(ordered.stream().map(activityId -> ActivityClaim.builder()
+                            .activityId(activityId)
+                            .owner(owner)
+                            .claimedAt(now)
+                            .build()).toList())
+                    .execute();
+        }catch (BulkOperationException e){
+            for (BulkWriteError error : e.getErrors()) {
+                if(ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) throw e;
+                taken.add(ordered.get(error.getIndex()));
+            }
+            candidates.removeAll(taken);
+            log.info("Deferring {} activities claimed by another consumer: {}", taken.size(), taken);
+        }
+        return new ClaimResult(candidates, taken);
+    }
+
+    // The recommendations are saved, so later deliveries are rejected in memory
+    public void complete(Collection<String> activityIds){
+        activityIds.forEach(activityId -> completed.put(activityId, Boolean.TRUE));
+        release(activityIds);
+    }
+
+    // Lets a retried delivery claim the activities again
+    public void release(Collection<String> activityIds){
+        if(activityIds.isEmpty()) return;
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(activityIds).and("owner").is(owner)), ActivityClaim.class);
+    }
+}
@@ -1,16 +1,38 @@
 package com.fitness.aiservice.service;
 
+import com.fitness.aiservice.dto.RecommendationPageResponse;
+import com.fitness.aiservice.dto.RecommendationSummary;
 import com.fitness.aiservice.model.Recommendation;
 import com.fitness.aiservice.repository.RecommendationRepository;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class RecommendationService {
     private final RecommendationRepository repository;
+    private final RecommendationStreamService streamService;
+
+    @Value("${ai.recommendation.page.default-size:20}")
+    private int pageDefaultSize;
+    @Value("${ai.recommendation.page.max-size:100}")
+    private int pageMaxSize;
+    @Value("${ai.stream.timeout:5m}")
+    private Duration streamTimeout;
 
     public List<Recommendation> getUserRecommendations(String userId) {
         return repository.findByUserId(userId);
@@ -20,4 +42,61 @@ public class RecommendationService {
         return repository.findByActivityId(activityId)
                 .orElseThrow(() -> new RuntimeException("No recommendation found for this activity: " + activityId));
     }
+
+    public RecommendationPageResponse getUserRecommendationsPage(String userId, String cursor, Integer limit) {
+        int pageSize = limit == null ? pageDefaultSize : Math.max(1, Math.min(limit, pageMaxSize));
+
+        LocalDateTime afterCreatedAt = null;
+        String afterId = null;
+        if(cursor != null && !cursor.isBlank()){
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                afterCreatedAt = LocalDateTime.parse(parts[0]);
+                afterId = parts[1];
+            }catch (Exception e){
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+            if(!ObjectId.isValid(afterId)){
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+            }
+        }
+
+        // One extra entry tells whether another page follows
+        List<RecommendationSummary> summaries = repository.findSummaryPage(userId, afterCreatedAt, afterId, pageSize + 1);
+        String nextCursor = null;
+        if(summaries.size() > pageSize){
+            summaries = summaries.subList(0, pageSize);
+            RecommendationSummary last = summaries.get(pageSize - 1);
+            String position = last.getCreatedAt() + "|" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return RecommendationPageResponse.builder()
+                .recommendations(summaries)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    public Flux<ServerSentEvent<Object>> streamActivityRecommendation(String activityId) {
+        Flux<ServerSentEvent<Object>> live = streamService.open(activityId);
+        // One lookup once the live stream is registered covers anything saved before the client subscribed.
+        // An analysis finished by another instance is not pushed here; the stream then ends at the timeout
+        Mono<ServerSentEvent<Object>> saved = findRecommendation(activityId)
+                .map(recommendation -> ServerSentEvent.<Object>builder()
+                        .event(recommendation.isProvisional()
+                                ? RecommendationStreamService.PROVISIONAL_EVENT
+                                : RecommendationStreamService.RECOMMENDATION_EVENT)
+                        .data(recommendation)
+                        .build());
+
+        return Flux.merge(live, saved)
+                .takeUntil(event -> RecommendationStreamService.RECOMMENDATION_EVENT.equals(event.event()))
+                .take(streamTimeout);
+    }
+
+    private Mono<Recommendation> findRecommendation(String activityId) {
+        return Mono.fromCallable(() -> repository.findByActivityId(activityId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty);
+    }
 }
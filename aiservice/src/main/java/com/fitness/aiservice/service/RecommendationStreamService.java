@@ -0,0 +1,75 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fans generation progress out to SSE subscribers of an activity. A stream is opened when a client
+ * subscribes, receives the provisional rule-based recommendation, then analysis text as the LLM produces
+ * it, and ends with the saved recommendation. A reset event means the LLM call is being retried and the
+ * partial text received so far is void.
+ * Streams replay what was already sent, so a client joining mid-generation still sees the full text.
+ */
+@Slf4j
+@Service
+public class RecommendationStreamService {
+
+    public static final String PARTIAL_EVENT = "partial";
+    public static final String RESET_EVENT = "reset";
+    public static final String PROVISIONAL_EVENT = "provisional";
+    public static final String RECOMMENDATION_EVENT = "recommendation";
+
+    private final Map<String, Sinks.Many<ServerSentEvent<Object>>> streams = new ConcurrentHashMap<>();
+
+    // The stream is registered on call, before the caller checks for an existing result,
+    // so a recommendation saved in between is still delivered
+    public Flux<ServerSentEvent<Object>> open(String activityId){
+        Sinks.Many<ServerSentEvent<Object>> sink = streams.computeIfAbsent(activityId,
+                id -> Sinks.many().replay().all());
+        return sink.asFlux()
+                .doFinally(signal -> {
+                    if(sink.currentSubscriberCount() == 0) streams.remove(activityId, sink);
+                });
+    }
+
+    public boolean isStreaming(String activityId){
+        return streams.containsKey(activityId);
+    }
+
+    public void publishPartial(String activityId, String text){
+        Sinks.Many<ServerSentEvent<Object>> sink = streams.get(activityId);
+        if(sink != null){
+            sink.tryEmitNext(ServerSentEvent.<Object>builder().event(PARTIAL_EVENT).data(text).build());
+        }
+    }
+
+    public void publishReset(String activityId){
+        Sinks.Many<ServerSentEvent<Object>> sink = streams.get(activityId);
+        if(sink != null){
+            // Browsers drop events without data, so the activity id is sent along
+            sink.tryEmitNext(ServerSentEvent.<Object>builder().event(RESET_EVENT).data(activityId).build());
+        }
+    }
+
+    public void publishProvisional(Recommendation recommendation){
+        Sinks.Many<ServerSentEvent<Object>> sink = streams.get(recommendation.getActivityId());
+        if(sink != null){
+            sink.tryEmitNext(ServerSentEvent.<Object>builder().event(PROVISIONAL_EVENT).data(recommendation).build());
+        }
+    }
+
+    public void publishRecommendation(Recommendation recommendation){
+        Sinks.Many<ServerSentEvent<Object>> sink = streams.remove(recommendation.getActivityId());
+        if(sink != null){
+            sink.tryEmitNext(ServerSentEvent.<Object>builder().event(RECOMMENDATION_EVENT).data(recommendation).build());
+            sink.tryEmitComplete();
+        }
+    }
+}
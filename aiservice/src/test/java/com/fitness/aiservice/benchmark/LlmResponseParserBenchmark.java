@@ -0,0 +1,139 @@
+package com.fitness.aiservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.service.LlmResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link LlmResponseParser} with the tree-based extraction it replaced, on
+ * recorded Gemini responses for a single analysis and for a batch of eight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LlmResponseParserBenchmark {
+
+    private String singleResponse;
+    private String batchResponse;
+    private LlmResponseParser parser;
+
+    @Setup
+    public void setup() throws IOException {
+        singleResponse = fixture("single.json");
+        batchResponse = fixture("batch.json");
+        parser = new LlmResponseParser(new ObjectMapper());
+    }
+
+    @Benchmark
+    public Recommendation streamingSingle() throws IOException {
+        return parser.parseRecommendation(singleResponse);
+    }
+
+    @Benchmark
+    public Recommendation legacySingle() throws IOException {
+        return LegacyExtraction.buildRecommendation(new ObjectMapper().readTree(LegacyExtraction.extractResponseText(singleResponse)));
+    }
+
+    @Benchmark
+    public Map<String, Recommendation> streamingBatch() throws IOException {
+        return parser.parseBatch(batchResponse);
+    }
+
+    @Benchmark
+    public Map<String, Recommendation> legacyBatch() throws IOException {
+        Map<String, Recommendation> recommendations = new HashMap<>();
+        JsonNode analysisArray = new ObjectMapper().readTree(LegacyExtraction.extractResponseText(batchResponse));
+        analysisArray.forEach(analysis -> recommendations.put(analysis.path("activityId").asText(), LegacyExtraction.buildRecommendation(analysis)));
+        return recommendations;
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = LlmResponseParserBenchmark.class.getResourceAsStream("/llm-responses/" + name)) {
+            if(in == null) throw new IOException("Missing fixture " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // The extraction ActivityAiService used before the streaming parser, kept as the baseline
+    static final class LegacyExtraction {
+
+        static String extractResponseText(String aiResponse) throws IOException {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode rootNode = mapper.readTree(aiResponse);
+            JsonNode textNode = rootNode
+                    .path("candidates")
+                    .get(0)
+                    .path("content")
+                    .path("parts")
+                    .get(0)
+                    .path("text");
+
+            return textNode.asText()
+                    .replaceAll("```json\\n", "")
+                    .replaceAll("\\n```", "").trim();
+        }
+
+        static Recommendation buildRecommendation(JsonNode analysisJson){
+            StringBuilder fullAnalysis = new StringBuilder();
+            JsonNode analysisNode = analysisJson.path("analysis");
+            parseAnalysis(fullAnalysis, analysisNode, "overall", "Overall:");
+            parseAnalysis(fullAnalysis, analysisNode, "pace", "Pace:");
+            parseAnalysis(fullAnalysis, analysisNode, "heartrate", "Heart Rate:");
+            parseAnalysis(fullAnalysis, analysisNode, "caloriesBurned", "Calories Burned:");
+
+            return Recommendation.builder()
+                    .recommendation(fullAnalysis.toString().trim())
+                    .improvement(pairs(analysisJson.path("improvements"), "areas", "recommendation"))
+                    .suggestion(pairs(analysisJson.path("suggestions"), "workout", "description"))
+                    .safety(safety(analysisJson.path("safety")))
+                    .build();
+        }
+
+        private static void parseAnalysis(StringBuilder fullAnalysis, JsonNode analysisNode, String key, String prefix) {
+            if(!analysisNode.isMissingNode()){
+                fullAnalysis.append(prefix)
+                        .append(analysisNode.path(key).asText())
+                        .append("\n\n");
+            }
+        }
+
+        private static List<String> pairs(JsonNode node, String firstKey, String secondKey){
+            List<String> values = new ArrayList<>();
+            if(node.isArray()){
+                node.forEach(item -> values.add(String.format("%s : %s", item.path(firstKey).asText(), item.path(secondKey).asText())));
+            }
+            return values;
+        }
+
+        private static List<String> safety(JsonNode node){
+            List<String> values = new ArrayList<>();
+            if(node.isArray()){
+                node.forEach(item -> values.add(item.asText()));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityClaim;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.repository.RecommendationRepository;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActivityMessageListenerTest {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations claimInserts = mock(BulkOperations.class);
+    private final ActivityAiService aiService = mock(ActivityAiService.class);
+    private final RecommendationRepository recommendationRepository = mock(RecommendationRepository.class);
+    private final ActivityRetryRouter retryRouter = mock(ActivityRetryRouter.class);
+
+    private ActivityMessageListener listener;
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ActivityClaim.class))).thenReturn(claimInserts);
+        when(claimInserts.insert(anyList())).thenReturn(claimInserts);
+        when(recommendationRepository.upsertAllByActivityId(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        RecommendationIdempotencyGuard guard = new RecommendationIdempotencyGuard(mongoTemplate, new SimpleMeterRegistry(),
+                1000, Duration.ofHours(1));
+        listener = new ActivityMessageListener(aiService, recommendationRepository, mock(RecommendationStreamService.class),
+                retryRouter, mock(ActivityQueueMetrics.class), mock(LlmCircuitBreaker.class), guard,
+                mock(HeuristicRecommendationEngine.class));
+    }
+
+    @Test
+    void redeliveryOfAnActivityWithAStaleClaimIsDeferredThenAnalyzed() {
+        Activity activity = Activity.builder().id("activity-1").userId("user-1").type("RUNNING").build();
+        Message<Activity> delivery = MessageBuilder.withPayload(activity).build();
+        Recommendation recommendation = Recommendation.builder().activityId(activity.getId()).build();
+        when(aiService.generateRecommendations(List.of(activity))).thenReturn(List.of(recommendation));
+
+        // A consumer crashed while holding the claim; until the claim expires every insert collides with it
+        BulkOperationException staleClaim = mock(BulkOperationException.class);
+        when(staleClaim.getErrors()).thenReturn(List.of(new BulkWriteError(DUPLICATE_KEY, "duplicate key", new BsonDocument(), 0)));
+        when(claimInserts.execute()).thenThrow(staleClaim).thenReturn(mock(BulkWriteResult.class));
+
+        listener.processActivities(List.of(delivery));
+
+        verify(retryRouter).defer(List.of(delivery), true);
+        verify(aiService, never()).generateRecommendations(anyList());
+
+        // The deferred copy comes back after the claim has expired
+        listener.processActivities(List.of(delivery));
+
+        verify(retryRouter, times(1)).defer(anyList(), eq(true));
+        verify(aiService).generateRecommendations(List.of(activity));
+        verify(recommendationRepository).upsertAllByActivityId(List.of(recommendation));
+        verify(retryRouter, never()).routeFailed(anyList(), eq(true));
+    }
+}
@@ -0,0 +1,35 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveRateLimiterTest {
+
+    private static final double DELTA = 1e-9;
+
+    // initial 2/s, between 0.5 and 2.5, +0.2 per success, halved on decrease, 1s latency target
+    private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(new SimpleMeterRegistry(),
+            2, 0.5, 2.5, 0.2, 0.5, 1000, 2);
+
+    @Test
+    void fastSuccessesRaiseTheRateAdditivelyUpToTheMaximum() {
+        limiter.onSuccess(100);
+        assertEquals(2.2, limiter.currentRate(), DELTA);
+        limiter.onSuccess(1000);
+        assertEquals(2.4, limiter.currentRate(), DELTA);
+        limiter.onSuccess(100);
+        assertEquals(2.5, limiter.currentRate(), DELTA);
+    }
+
+    @Test
+    void slowAnswersAndThrottlingCutTheRateMultiplicativelyDownToTheMinimum() {
+        limiter.onSuccess(1001);
+        assertEquals(1.0, limiter.currentRate(), DELTA);
+        limiter.onThrottled();
+        assertEquals(0.5, limiter.currentRate(), DELTA);
+        limiter.onThrottled();
+        assertEquals(0.5, limiter.currentRate(), DELTA);
+    }
+}
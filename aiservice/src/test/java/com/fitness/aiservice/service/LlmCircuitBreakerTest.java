@@ -0,0 +1,58 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LlmCircuitBreakerTest {
+
+    // No cool-down, so an open breaker goes half-open on the next tryAcquire
+    private final LlmCircuitBreaker breaker = new LlmCircuitBreaker(new SimpleMeterRegistry(), 2, Duration.ZERO);
+
+    @Test
+    void opensAfterConsecutiveFailuresAndLetsOneTrialThrough() {
+        assertEquals(LlmCircuitBreaker.Permit.GRANTED, breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(LlmCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(LlmCircuitBreaker.State.OPEN, breaker.getState());
+
+        assertEquals(LlmCircuitBreaker.Permit.TRIAL, breaker.tryAcquire());
+        assertEquals(LlmCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(LlmCircuitBreaker.Permit.DENIED, breaker.tryAcquire());
+    }
+
+    @Test
+    void callAdmittedWhileClosedDoesNotReleaseAnotherCallersTrial() {
+        LlmCircuitBreaker.Permit earlyCall = breaker.tryAcquire();
+        breaker.onFailure();
+        breaker.onFailure();
+        LlmCircuitBreaker.Permit trial = breaker.tryAcquire();
+        assertEquals(LlmCircuitBreaker.Permit.TRIAL, trial);
+
+        // The call admitted while closed finishes without an outcome while the trial is still running
+        breaker.release(earlyCall);
+        assertEquals(LlmCircuitBreaker.Permit.DENIED, breaker.tryAcquire());
+
+        breaker.release(trial);
+        assertEquals(LlmCircuitBreaker.Permit.TRIAL, breaker.tryAcquire());
+    }
+
+    @Test
+    void trialOutcomeClosesOrReopensTheBreaker() {
+        breaker.onFailure();
+        breaker.onFailure();
+        LlmCircuitBreaker.Permit trial = breaker.tryAcquire();
+        breaker.onFailure();
+        breaker.release(trial);
+        assertEquals(LlmCircuitBreaker.State.OPEN, breaker.getState());
+
+        assertEquals(LlmCircuitBreaker.Permit.TRIAL, breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(LlmCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(LlmCircuitBreaker.Permit.GRANTED, breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,53 @@
+package com.fitness.gateway.User;
+
+import com.fitness.gateway.dto.RegisterRequest;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Makes sure a Keycloak user exists in the user service, calling it only for users this gateway has
+ * not seen within the ttl. Concurrent requests of a user being synced share the same in-flight
+ * validate/register call; failed or inconclusive syncs are not remembered and run again next time.
+ */
+@Service
+@Slf4j
+public class UserSyncService {
+    private final UserService userService;
+    private final AsyncCache<String, Boolean> syncedUsers;
+
+    public UserSyncService(UserService userService,
+                           @Value("${gateway.user-sync.max-size:100000}") long maxSize,
+                           @Value("${gateway.user-sync.ttl:30m}") Duration ttl){
+        this.userService = userService;
+        this.syncedUsers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .buildAsync();
+    }
+
+    public Mono<Void> syncUser(String userId, RegisterRequest request){
+        CompletableFuture<Boolean> sync = syncedUsers.get(userId, (id, executor) -> validateOrRegister(id, request).toFuture());
+        // A cancelled request must not cancel the call other requests are waiting on
+        return Mono.fromFuture(sync, true).then();
+    }
+
+    // Completes empty when the user could not be registered, which Caffeine does not cache
+    private Mono<Boolean> validateOrRegister(String userId, RegisterRequest request){
+        return userService.validateUser(userId)
+                .flatMap(exist -> {
+                    if (exist) {
+                        log.info("User already exist... Skipping sync");
+                        return Mono.just(true);
+                    }
+                    if (request == null) return Mono.empty();
+                    return userService.registerUser(request).thenReturn(true);
+                });
+    }
+}
@@ -1,76 +1,88 @@
 package com.fitness.gateway.config;
 
-import com.fitness.gateway.User.UserService;
+import com.fitness.gateway.User.UserSyncService;
 import com.fitness.gateway.dto.RegisterRequest;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
+/**
+ * Runs after the resource server has verified the bearer token and reads the user from the
+ * authenticated {@link Jwt} in the security context, so the token is never parsed a second time.
+ * X-USER-ID is always set from the token's subject, never taken from the client.
+ */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class KeycloakUserSyncFilter implements WebFilter {
-    private final UserService userService;
+    private final UserSyncService userSyncService;
+    // Claims of a token do not change, so its registration details are built once per token id
+    private final Cache<String, RegisterRequest> userDetails;
+
+    public KeycloakUserSyncFilter(UserSyncService userSyncService,
+                                  @Value("${gateway.user-sync.claims-cache.max-size:10000}") long maxSize,
+                                  @Value("${gateway.user-sync.claims-cache.ttl:5m}") Duration ttl){
+        this.userSyncService = userSyncService;
+        this.userDetails = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-        String token = exchange.getRequest().getHeaders().getFirst("Authorization");
-        String userId = exchange.getRequest().getHeaders().getFirst("X-USER-ID");
-        RegisterRequest request = getUserDetails(token);
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(JwtAuthenticationToken.class::isInstance)
+                .map(authentication -> ((JwtAuthenticationToken) authentication).getToken())
+                .flatMap(jwt -> {
+                    // The verified subject is the only source of the user id; a client-sent X-USER-ID is replaced
+                    String userId = jwt.getSubject();
+                    if(userId == null) return Mono.just(withoutUserHeader(exchange));
 
-        if(userId == null) userId = request.getKeycloakId();
-
-        if (userId != null && token != null) {
-            String finalUserId = userId;
-            return userService.validateUser(userId)
-                    .flatMap(exist -> {
-                        log.info("User exist: {}", exist);
-                        if (!exist) {
-                            if (request != null){
-                                return userService.registerUser(request).then(Mono.empty());
-                            }else{
-                                return Mono.empty();
-                            }
-                        } else {
-                            log.info("User already exist... Skipping sync");
-                            return Mono.empty();
-                        }
-                    }).then(Mono.defer(() ->{
-                        ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
-                                .header("X-USER-ID", finalUserId)
-                                .build();
-                        return chain.filter(exchange.mutate().request(mutatedRequest).build());
-                    }));
-        }
-        return chain.filter(exchange);
+                    ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
+                            .headers(headers -> headers.set("X-USER-ID", userId))
+                            .build();
+                    return userSyncService.syncUser(userId, getUserDetails(jwt))
+                            .thenReturn(exchange.mutate().request(mutatedRequest).build());
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> withoutUserHeader(exchange)))
+                .flatMap(chain::filter);
     }
 
-    private RegisterRequest getUserDetails(String token) {
-
-        try{
-            String tokenWithoutBearer = token.replace("Bearer ", "");
-            SignedJWT signedJWT = SignedJWT.parse(tokenWithoutBearer);
-            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
-
-            RegisterRequest registerRequest = new RegisterRequest();
-            registerRequest.setEmail(claims.getStringClaim("email"));
-            registerRequest.setKeycloakId(claims.getStringClaim("sub"));
-            registerRequest.setFirstName(claims.getStringClaim("given_name"));
-            registerRequest.setLastName(claims.getStringClaim("family_name"));
-            registerRequest.setPassword("dummy@123");
-
-            return registerRequest;
+    // Without a verified subject no user id is forwarded at all
+    private static ServerWebExchange withoutUserHeader(ServerWebExchange exchange) {
+        if(!exchange.getRequest().getHeaders().containsKey("X-USER-ID")) return exchange;
+        return exchange.mutate()
+                .request(exchange.getRequest().mutate().headers(headers -> headers.remove("X-USER-ID")).build())
+                .build();
+    }
 
-        }catch (Exception err){
-            return null;
-        }
+    private RegisterRequest getUserDetails(Jwt jwt) {
+        String tokenId = jwt.getId();
+        if(tokenId == null) return toRegisterRequest(jwt);
+        return userDetails.get(tokenId, id -> toRegisterRequest(jwt));
+    }
 
+    private RegisterRequest toRegisterRequest(Jwt jwt) {
+        RegisterRequest registerRequest = new RegisterRequest();
+        registerRequest.setEmail(jwt.getClaimAsString("email"));
+        registerRequest.setKeycloakId(jwt.getSubject());
+        registerRequest.setFirstName(jwt.getClaimAsString("given_name"));
+        registerRequest.setLastName(jwt.getClaimAsString("family_name"));
+        registerRequest.setPassword("dummy@123");
+        return registerRequest;
     }
 }
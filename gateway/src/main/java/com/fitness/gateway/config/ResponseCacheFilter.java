@@ -0,0 +1,246 @@
+package com.fitness.gateway.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches successful GET responses of routes that carry a {@value #TTL_METADATA} metadata entry, per
+ * user and URI, within a byte budget. Responses get an ETag and {@code Cache-Control: private, no-cache},
+ * so clients revalidate with If-None-Match and receive 304 while the content is unchanged. Any write a
+ * user sends through the gateway drops that user's entries; upstream responses marked no-store are
+ * passed through uncached. Entries are keyed by the authenticated principal, never by a request header.
+ */
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+    public static final String TTL_METADATA = "response-cache-ttl";
+
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+    // Rough per-entry cost of the key, record and map node on top of the body
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private record CacheKey(String userId, String uri) {}
+
+    private record CachedResponse(MediaType contentType, String etag, byte[] body, Duration ttl) {}
+
+    private final Cache<CacheKey, CachedResponse> responses;
+    // Keys cached per user, so a write drops that user's entries without scanning the whole cache
+    private final Map<String, Set<CacheKey>> keysByUser = new ConcurrentHashMap<>();
+    // Bumped by every write of a user. A GET whose response arrives after a write it overlapped does not store
+    // its possibly stale body; entries outlive any request because they only expire after ten idle minutes
+    private final Cache<String, AtomicLong> writeGenerations = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+    private final long maxEntryBytes;
+
+    public ResponseCacheFilter(@Value("${gateway.response-cache.max-size:64MB}") DataSize maxSize,
+                               @Value("${gateway.response-cache.max-entry-size:256KB}") DataSize maxEntrySize){
+        this.maxEntryBytes = maxEntrySize.toBytes();
+        this.responses = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((CacheKey key, CachedResponse response) -> ENTRY_OVERHEAD + 2 * key.uri().length() + response.body().length)
+                .expireAfter(new Expiry<CacheKey, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(CacheKey key, CachedResponse response, long currentTime) {
+                        return response.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(CacheKey key, CachedResponse response, long currentTime, long currentDuration) {
+                        return response.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(CacheKey key, CachedResponse response, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                // Runs on the removing thread so the index never lags behind the cache
+                .executor(Runnable::run)
+                .removalListener((CacheKey key, CachedResponse response, RemovalCause cause) -> {
+                    if(key != null && cause != RemovalCause.REPLACED) unindex(key);
+                })
+                .build();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .defaultIfEmpty("")
+                .flatMap(userId -> userId.isEmpty() ? chain.filter(exchange) : filter(exchange, chain, userId));
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, String userId) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpMethod method = request.getMethod();
+        if(method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH || method == HttpMethod.DELETE){
+            // A write can change any activity or recommendation the user has cached
+            return chain.filter(exchange).doFinally(signal -> {
+                writeGenerations.get(userId, id -> new AtomicLong()).incrementAndGet();
+                invalidate(userId);
+            });
+        }
+        Duration ttl = method == HttpMethod.GET ? routeTtl(exchange) : null;
+        if(ttl == null) return chain.filter(exchange);
+
+        CacheKey key = new CacheKey(userId, request.getURI().getRawQuery() == null
+                ? request.getURI().getRawPath()
+                : request.getURI().getRawPath() + "?" + request.getURI().getRawQuery());
+        CachedResponse cached = responses.getIfPresent(key);
+        if(cached != null) return writeCached(exchange, cached);
+        return chain.filter(exchange.mutate().response(new CachingResponse(exchange, key, ttl, writeGeneration(userId))).build());
+    }
+
+    @Override
+    public int getOrder() {
+        // Must wrap the response before NettyWriteResponseFilter writes the upstream body to it
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    private void invalidate(String userId) {
+        Set<CacheKey> keys = keysByUser.remove(userId);
+        if(keys != null) responses.invalidateAll(keys);
+    }
+
+    private long writeGeneration(String userId) {
+        AtomicLong generation = writeGenerations.getIfPresent(userId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private void store(CacheKey key, CachedResponse response, long generation) {
+        if(writeGeneration(key.userId()) != generation) return;
+        responses.put(key, response);
+        keysByUser.computeIfAbsent(key.userId(), userId -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    private void unindex(CacheKey key) {
+        keysByUser.computeIfPresent(key.userId(), (userId, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private Duration routeTtl(ServerWebExchange exchange) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        Object ttl = route == null ? null : route.getMetadata().get(TTL_METADATA);
+        return ttl == null ? null : DurationStyle.detectAndParse(ttl.toString());
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.setETag(cached.etag());
+        headers.setCacheControl(REVALIDATE);
+        if(notModified(exchange.getRequest(), cached.etag())){
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.OK);
+        if(cached.contentType() != null) headers.setContentType(cached.contentType());
+        headers.setContentLength(cached.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+
+    private static boolean notModified(ServerHttpRequest request, String etag) {
+        for (String candidate : request.getHeaders().getIfNoneMatch()) {
+            if(candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) return true;
+        }
+        return false;
+    }
+
+    // Buffers a 200 response body of at most maxEntryBytes to store it, tag it with an ETag and answer a matching
+    // If-None-Match with 304. Larger bodies are streamed through after holding no more than the limit
+    private class CachingResponse extends ServerHttpResponseDecorator {
+        private final ServerHttpRequest request;
+        private final CacheKey key;
+        private final Duration ttl;
+        private final long generation;
+
+        CachingResponse(ServerWebExchange exchange, CacheKey key, Duration ttl, long generation) {
+            super(exchange.getResponse());
+            this.request = exchange.getRequest();
+            this.key = key;
+            this.ttl = ttl;
+            this.generation = generation;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            String cacheControl = getHeaders().getCacheControl();
+            if(status == null || status.value() != HttpStatus.OK.value()
+                    || (cacheControl != null && cacheControl.contains("no-store"))
+                    || getHeaders().getContentLength() > maxEntryBytes){
+                return super.writeWith(body);
+            }
+            // The first list closes either once the limit is passed or when the body ends within it
+            AtomicLong size = new AtomicLong();
+            return Flux.from(body)
+                    .bufferUntil(buffer -> size.addAndGet(buffer.readableByteCount()) > maxEntryBytes)
+                    .switchOnFirst((first, lists) -> {
+                        Flux<DataBuffer> buffers = lists.flatMapIterable(list -> list);
+                        if(first.hasValue() && size.get() > maxEntryBytes) return super.writeWith(buffers);
+                        return cacheAndWrite(buffers);
+                    })
+                    .then();
+        }
+
+        private Mono<Void> cacheAndWrite(Flux<DataBuffer> body) {
+            return DataBufferUtils.join(body)
+                    .flatMap(joined -> {
+                        byte[] bytes = new byte[joined.readableByteCount()];
+                        joined.read(bytes);
+                        DataBufferUtils.release(joined);
+
+                        String etag = "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"";
+                        HttpHeaders headers = getHeaders();
+                        headers.setETag(etag);
+                        headers.setCacheControl(REVALIDATE);
+                        store(key, new CachedResponse(headers.getContentType(), etag, bytes, ttl), generation);
+                        if(notModified(request, etag)){
+                            setStatusCode(HttpStatus.NOT_MODIFIED);
+                            headers.remove(HttpHeaders.CONTENT_LENGTH);
+                            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+                            return setComplete();
+                        }
+                        return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+                    })
+                    .switchIfEmpty(Mono.defer(() -> super.writeWith(Flux.empty())));
+        }
+    }
+}
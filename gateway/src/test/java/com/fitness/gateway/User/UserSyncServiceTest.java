@@ -0,0 +1,111 @@
+package com.fitness.gateway.User;
+
+import com.fitness.gateway.dto.RegisterRequest;
+import com.fitness.gateway.dto.UserResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class UserSyncServiceTest {
+
+    private static final String USER = "keycloak-user-1";
+
+    private final CountingUserService userService = new CountingUserService();
+    private final UserSyncService syncService = new UserSyncService(userService, 1000, Duration.ofHours(1));
+
+    @Test
+    void concurrentSyncsOfANewUserShareOneCall() {
+        Sinks.One<Boolean> validation = Sinks.one();
+        userService.validation = validation::asMono;
+
+        StepVerifier.create(Mono.when(syncService.syncUser(USER, request()), syncService.syncUser(USER, request())))
+                .then(() -> validation.tryEmitValue(false))
+                .verifyComplete();
+        StepVerifier.create(syncService.syncUser(USER, request())).verifyComplete();
+
+        assertEquals(1, userService.validations.get());
+        assertEquals(1, userService.registrations.get());
+    }
+
+    @Test
+    void emptySyncIsNotCached() {
+        userService.validation = () -> Mono.just(false);
+
+        // Without a request the unknown user cannot be registered
+        StepVerifier.create(syncService.syncUser(USER, null)).verifyComplete();
+        StepVerifier.create(syncService.syncUser(USER, null)).verifyComplete();
+
+        assertEquals(2, userService.validations.get());
+        assertEquals(0, userService.registrations.get());
+    }
+
+    @Test
+    void failedSyncIsNotCached() {
+        userService.validation = () -> Mono.error(new RuntimeException("Unexpected Error" + USER));
+
+        StepVerifier.create(syncService.syncUser(USER, request())).verifyError(RuntimeException.class);
+        userService.validation = () -> Mono.just(true);
+        StepVerifier.create(syncService.syncUser(USER, request())).verifyComplete();
+
+        assertEquals(2, userService.validations.get());
+    }
+
+    @Test
+    void cancellingOneSubscriberLeavesTheSharedCallRunning() {
+        Sinks.One<Boolean> validation = Sinks.one();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        userService.validation = () -> validation.asMono().doOnCancel(() -> cancelled.set(true));
+
+        StepVerifier.create(syncService.syncUser(USER, request())).thenCancel().verify();
+        StepVerifier.create(syncService.syncUser(USER, request()))
+                .then(() -> validation.tryEmitValue(true))
+                .verifyComplete();
+
+        assertFalse(cancelled.get());
+        assertEquals(1, userService.validations.get());
+    }
+
+    private static RegisterRequest request() {
+        RegisterRequest request = new RegisterRequest();
+        request.setKeycloakId(USER);
+        request.setEmail("user@example.com");
+        return request;
+    }
+
+    // Counts the calls that reach the user service; each test decides how validation answers
+    private static class CountingUserService extends UserService {
+        private final AtomicInteger validations = new AtomicInteger();
+        private final AtomicInteger registrations = new AtomicInteger();
+        private Supplier<Mono<Boolean>> validation = () -> Mono.just(true);
+
+        CountingUserService() {
+            super(WebClient.create());
+        }
+
+        @Override
+        public Mono<Boolean> validateUser(String userId) {
+            return Mono.defer(() -> {
+                validations.incrementAndGet();
+                return validation.get();
+            });
+        }
+
+        @Override
+        public Mono<UserResponse> registerUser(RegisterRequest request) {
+            return Mono.fromSupplier(() -> {
+                registrations.incrementAndGet();
+                return UserResponse.builder().keycloakId(request.getKeycloakId()).build();
+            });
+        }
+    }
+}
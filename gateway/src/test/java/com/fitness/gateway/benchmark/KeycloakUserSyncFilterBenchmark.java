@@ -0,0 +1,167 @@
+package com.fitness.gateway.benchmark;
+
+import com.fitness.gateway.User.UserService;
+import com.fitness.gateway.User.UserSyncService;
+import com.fitness.gateway.config.KeycloakUserSyncFilter;
+import com.fitness.gateway.dto.RegisterRequest;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of {@link KeycloakUserSyncFilter} for a user that is already synced, against
+ * the previous approach of parsing the Authorization header again with {@link SignedJWT}. Both go
+ * through the same {@link UserSyncService}, so the difference is the token handling alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeycloakUserSyncFilterBenchmark {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    private String authorization;
+    private Context securityContext;
+    private UserSyncService userSyncService;
+    private KeycloakUserSyncFilter filter;
+
+    @Setup
+    public void setup() throws JOSEException {
+        String subject = UUID.randomUUID().toString();
+        String tokenId = UUID.randomUUID().toString();
+        Instant issuedAt = Instant.now();
+        Instant expiresAt = issuedAt.plus(Duration.ofHours(1));
+
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), new JWTClaimsSet.Builder()
+                .subject(subject)
+                .jwtID(tokenId)
+                .issuer("http://localhost:8181/realms/fitness-oauth2")
+                .issueTime(Date.from(issuedAt))
+                .expirationTime(Date.from(expiresAt))
+                .claim("email", "benchmark@fitness.com")
+                .claim("given_name", "Bench")
+                .claim("family_name", "Mark")
+                .build());
+        signedJWT.sign(new MACSigner(new byte[32]));
+        String token = signedJWT.serialize();
+        authorization = "Bearer " + token;
+
+        // What the resource server puts in the security context after verifying the token
+        Jwt jwt = Jwt.withTokenValue(token)
+                .header("alg", "HS256")
+                .subject(subject)
+                .jti(tokenId)
+                .issuer("http://localhost:8181/realms/fitness-oauth2")
+                .issuedAt(issuedAt)
+                .expiresAt(expiresAt)
+                .claim("email", "benchmark@fitness.com")
+                .claim("given_name", "Bench")
+                .claim("family_name", "Mark")
+                .build();
+        securityContext = ReactiveSecurityContextHolder.withAuthentication(new JwtAuthenticationToken(jwt));
+
+        userSyncService = new UserSyncService(new SyncedUserService(), 1000, Duration.ofHours(1));
+        filter = new KeycloakUserSyncFilter(userSyncService, 1000, Duration.ofMinutes(5));
+        userSyncService.syncUser(subject, null).block();
+    }
+
+    @Benchmark
+    public Void securityContextJwt() {
+        return filter.filter(exchange(), CHAIN).contextWrite(securityContext).block();
+    }
+
+    @Benchmark
+    public Void reparsedHeader() {
+        return legacyFilter(exchange()).contextWrite(securityContext).block();
+    }
+
+    private ServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/activities")
+                .header(HttpHeaders.AUTHORIZATION, authorization));
+    }
+
+    // The filter as it was before it read the verified Jwt
+    private Mono<Void> legacyFilter(ServerWebExchange exchange) {
+        String token = exchange.getRequest().getHeaders().getFirst("Authorization");
+        String userId = exchange.getRequest().getHeaders().getFirst("X-USER-ID");
+        RegisterRequest request = legacyUserDetails(token);
+
+        if(userId == null) userId = request.getKeycloakId();
+
+        if (userId != null && token != null) {
+            String finalUserId = userId;
+            return userSyncService.syncUser(userId, request)
+                    .then(Mono.defer(() ->{
+                        ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
+                                .header("X-USER-ID", finalUserId)
+                                .build();
+                        return CHAIN.filter(exchange.mutate().request(mutatedRequest).build());
+                    }));
+        }
+        return CHAIN.filter(exchange);
+    }
+
+    private static RegisterRequest legacyUserDetails(String token) {
+        try{
+            String tokenWithoutBearer = token.replace("Bearer ", "");
+            SignedJWT signedJWT = SignedJWT.parse(tokenWithoutBearer);
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+
+            RegisterRequest registerRequest = new RegisterRequest();
+            registerRequest.setEmail(claims.getStringClaim("email"));
+            registerRequest.setKeycloakId(claims.getStringClaim("sub"));
+            registerRequest.setFirstName(claims.getStringClaim("given_name"));
+            registerRequest.setLastName(claims.getStringClaim("family_name"));
+            registerRequest.setPassword("dummy@123");
+            return registerRequest;
+        }catch (Exception err){
+            return null;
+        }
+    }
+
+    // Every user exists, so the one sync in setup leaves the id cached
+    private static class SyncedUserService extends UserService {
+        SyncedUserService() {
+            super(WebClient.create());
+        }
+
+        @Override
+        public Mono<Boolean> validateUser(String userId) {
+            return Mono.just(true);
+        }
+    }
+}
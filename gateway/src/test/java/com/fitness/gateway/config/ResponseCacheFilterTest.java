@@ -0,0 +1,154 @@
+package com.fitness.gateway.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCacheFilterTest {
+
+    private static final String PATH = "/api/activities?limit=20";
+    private static final Route ROUTE = Route.async()
+            .id("activity-service")
+            .uri("http://localhost:8082")
+            .predicate(exchange -> true)
+            .metadata(ResponseCacheFilter.TTL_METADATA, "1m")
+            .build();
+
+    private final ResponseCacheFilter filter = new ResponseCacheFilter(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64));
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @Test
+    void missGoesUpstreamAndHitIsServedFromTheCache() {
+        ServerWebExchange miss = get("user-a");
+        filter.filter(miss, upstream("[1]", null)).block();
+
+        ServerWebExchange hit = get("user-a");
+        filter.filter(hit, upstream("[2]", null)).block();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals("[1]", body(miss));
+        assertEquals("[1]", body(hit));
+        assertEquals(miss.getResponse().getHeaders().getETag(), hit.getResponse().getHeaders().getETag());
+    }
+
+    @Test
+    void matchingIfNoneMatchIsAnsweredWith304() {
+        ServerWebExchange first = get("user-a");
+        filter.filter(first, upstream("[1]", null)).block();
+        String etag = first.getResponse().getHeaders().getETag();
+        assertNotNull(etag);
+
+        ServerWebExchange revalidation = exchange(MockServerHttpRequest.get(PATH).ifNoneMatch(etag), "user-a");
+        filter.filter(revalidation, upstream("[1]", null)).block();
+
+        assertEquals(HttpStatus.NOT_MODIFIED, revalidation.getResponse().getStatusCode());
+        assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void noStoreResponsesAreNotCached() {
+        filter.filter(get("user-a"), upstream("[1]", CacheControl.noStore())).block();
+        filter.filter(get("user-a"), upstream("[1]", CacheControl.noStore())).block();
+
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void writeDropsOnlyTheWritingUsersEntries() {
+        filter.filter(get("user-a"), upstream("[a]", null)).block();
+        filter.filter(get("user-b"), upstream("[b]", null)).block();
+
+        filter.filter(exchange(MockServerHttpRequest.post("/api/activities"), "user-a"), upstream("{}", null)).block();
+        filter.filter(get("user-a"), upstream("[a2]", null)).block();
+        ServerWebExchange otherUser = get("user-b");
+        filter.filter(otherUser, upstream("[b2]", null)).block();
+
+        // Two initial misses, the write, and the re-fetch for user-a
+        assertEquals(4, upstreamCalls.get());
+        assertEquals("[b]", body(otherUser));
+    }
+
+    @Test
+    void entriesAreKeyedByThePrincipalNotTheUserHeader() {
+        filter.filter(get("user-a"), upstream("[a]", null)).block();
+
+        ServerWebExchange spoofed = exchange(MockServerHttpRequest.get(PATH).header("X-USER-ID", "user-a"), "user-b");
+        filter.filter(spoofed, upstream("[b]", null)).block();
+
+        assertEquals(2, upstreamCalls.get());
+        assertEquals("[b]", body(spoofed));
+    }
+
+    @Test
+    void getThatOverlapsAWriteIsNotStored() {
+        GatewayFilterChain racingWrite = exchange -> {
+            filter.filter(exchange(MockServerHttpRequest.post("/api/activities"), "user-a"), upstream("{}", null)).block();
+            return upstream("[stale]", null).filter(exchange);
+        };
+        filter.filter(get("user-a"), racingWrite).block();
+
+        ServerWebExchange next = get("user-a");
+        filter.filter(next, upstream("[fresh]", null)).block();
+
+        assertEquals("[fresh]", body(next));
+    }
+
+    @Test
+    void bodiesOverTheEntryLimitAreStreamedAndNotCached() {
+        ResponseCacheFilter small = new ResponseCacheFilter(DataSize.ofMegabytes(1), DataSize.ofBytes(4));
+        ServerWebExchange first = get("user-a");
+        small.filter(first, upstream("[1,2,3,4]", null)).block();
+        small.filter(get("user-a"), upstream("[1,2,3,4]", null)).block();
+
+        assertEquals("[1,2,3,4]", body(first));
+        assertNull(first.getResponse().getHeaders().getETag());
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    private ServerWebExchange get(String userId) {
+        return exchange(MockServerHttpRequest.get(PATH), userId);
+    }
+
+    // The principal is attached the way the security filter chain does it for a verified token
+    private ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request, String userId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        exchange.getAttributes().put(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, ROUTE);
+        Principal principal = () -> userId;
+        return exchange.mutate().principal(Mono.just(principal)).build();
+    }
+
+    private static String body(ServerWebExchange exchange) {
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block();
+    }
+
+    // Stands in for the proxied service
+    private GatewayFilterChain upstream(String body, CacheControl cacheControl) {
+        return exchange -> {
+            upstreamCalls.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if(cacheControl != null) response.getHeaders().setCacheControl(cacheControl);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(body.getBytes(StandardCharsets.UTF_8))));
+        };
+    }
+}